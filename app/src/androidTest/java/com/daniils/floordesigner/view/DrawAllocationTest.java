@@ -0,0 +1,91 @@
+package com.daniils.floordesigner.view;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.widget.LinearLayout;
+
+import com.daniils.floordesigner.Point;
+import com.daniils.floordesigner.Polygon;
+import com.daniils.floordesigner.R;
+import com.daniils.floordesigner.Shapes;
+import com.daniils.floordesigner.activity.EditorActivity;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts objects allocated by onDraw once the caches are warm.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawAllocationTest {
+    private static final int ROOMS = 20;
+    private static final int WARM_UP_FRAMES = 3;
+    private static final int FRAMES = 20;
+
+    @Rule
+    public ActivityTestRule<EditorActivity> rule = new ActivityTestRule<>(EditorActivity.class, false, false);
+
+    private DrawingView view;
+    private Canvas canvas;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Intent intent = new Intent(context, EditorActivity.class);
+        intent.putExtra("path", new File(context.getCacheDir(), "empty").getPath());
+        EditorActivity activity = rule.launchActivity(intent);
+        LinearLayout content = activity.findViewById(R.id.content_layout);
+        view = (DrawingView) content.getChildAt(0);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (int i = 0; i < ROOMS; i++) {
+                double x0 = (i % 5) * 400, y0 = (i / 5) * 400;
+                ArrayList<Point> path = new ArrayList<>();
+                for (Point p : Shapes.shapes[i % Shapes.shapes.length].points)
+                    path.add(new Point(x0 + p.x * 300, y0 + p.y * 300));
+                view.addPolygon(new Polygon(view, path));
+            }
+            view.updateLengthFrame();
+        });
+        canvas = new Canvas(Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void frameWithoutSelection_doesNotAllocate() {
+        assertEquals(0, countAllocations());
+    }
+
+    @Test
+    public void frameWithSelectedRoom_doesNotAllocate() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                view.polygons.get(0).setSelected(view.selection, true));
+        assertEquals(0, countAllocations());
+    }
+
+    private int countAllocations() {
+        final int[] count = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (int i = 0; i < WARM_UP_FRAMES; i++)
+                view.onDraw(canvas);
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for (int i = 0; i < FRAMES; i++)
+                view.onDraw(canvas);
+            Debug.stopAllocCounting();
+            count[0] = Debug.getThreadAllocCount();
+        });
+        return count[0];
+    }
+}
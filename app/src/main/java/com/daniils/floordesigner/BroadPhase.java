@@ -0,0 +1,97 @@
+package com.daniils.floordesigner;
+
+import java.util.ArrayList;
+
+/**
+ * Sweep and prune over room bounds.
+ * Rooms are kept sorted by the left side of their bounds; a moved room is
+ * shifted to its new place by swapping with neighbours, which is O(1)
+ * for the small steps of a drag.
+ */
+public class BroadPhase {
+    private final ArrayList<Polygon> byLeft = new ArrayList<>();
+    // widest room ever added, bounds how far to the left a query has to look
+    private double maxWidth = 0;
+
+    public void add(Polygon poly) {
+        if (byLeft.contains(poly))
+            return;
+        int i = lowerBound(poly.getLeft());
+        byLeft.add(i, poly);
+        for (int j = i; j < byLeft.size(); j++)
+            byLeft.get(j).sweepIndex = j;
+        maxWidth = Math.max(maxWidth, poly.getRight() - poly.getLeft());
+    }
+
+    public void remove(Polygon poly) {
+        int i = byLeft.indexOf(poly);
+        if (i < 0)
+            return;
+        byLeft.remove(i);
+        poly.sweepIndex = -1;
+        for (int j = i; j < byLeft.size(); j++)
+            byLeft.get(j).sweepIndex = j;
+        maxWidth = 0;
+        for (Polygon p : byLeft)
+            maxWidth = Math.max(maxWidth, p.getRight() - p.getLeft());
+    }
+
+    /**
+     * Must be called after bounds of the room have been changed.
+     */
+    public void update(Polygon poly) {
+        int i = poly.sweepIndex;
+        if (i < 0 || i >= byLeft.size() || byLeft.get(i) != poly)
+            return;
+        while (i > 0 && byLeft.get(i - 1).getLeft() > poly.getLeft()) {
+            swap(i, i - 1);
+            i--;
+        }
+        while (i + 1 < byLeft.size() && byLeft.get(i + 1).getLeft() < poly.getLeft()) {
+            swap(i, i + 1);
+            i++;
+        }
+        maxWidth = Math.max(maxWidth, poly.getRight() - poly.getLeft());
+    }
+
+    /**
+     * Collects rooms whose bounds overlap the given rectangle. Output list is cleared before filling.
+     */
+    public ArrayList<Polygon> query(double left, double top, double right, double bottom, ArrayList<Polygon> out) {
+        out.clear();
+        for (int i = lowerBound(left - maxWidth); i < byLeft.size(); i++) {
+            Polygon poly = byLeft.get(i);
+            if (poly.getLeft() > right)
+                break;
+            if (poly.getRight() >= left && poly.getTop() <= bottom && poly.getBottom() >= top)
+                out.add(poly);
+        }
+        return out;
+    }
+
+    public void clear() {
+        byLeft.clear();
+        maxWidth = 0;
+    }
+
+    private void swap(int i, int j) {
+        Polygon a = byLeft.get(i), b = byLeft.get(j);
+        byLeft.set(i, b);
+        byLeft.set(j, a);
+        b.sweepIndex = i;
+        a.sweepIndex = j;
+    }
+
+    // first position with left side not less than x
+    private int lowerBound(double x) {
+        int lo = 0, hi = byLeft.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (byLeft.get(mid).getLeft() < x)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,273 @@
+package com.daniils.floordesigner;
+
+import java.util.ArrayList;
+
+/**
+ * Finds the first contact of a moving room with the rest of the plan analytically,
+ * instead of probing the whole plan with intersection tests.
+ * Contacts are either a moving vertex hitting a foreign wall
+ * or a foreign vertex being hit by a moving wall.
+ */
+class CollisionSolver {
+    // distance kept between the room and an obstacle after the contact
+    public static final double CONTACT_GAP = 0.5;
+    // contacts closer than this are existing touches (e.g. shared walls), not new collisions
+    private static final double TOUCH_DIST = 0.01;
+
+    private final Polygon polygon;
+    private final ArrayList<Vertex> candidates = new ArrayList<>();
+    private final ArrayList<Polygon> neighbours = new ArrayList<>();
+
+    CollisionSolver(Polygon polygon) {
+        this.polygon = polygon;
+    }
+
+    /**
+     * @return fraction of (dx, dy) the polygon can be translated by without hitting anything, [0; 1]
+     */
+    public double getTranslationLimit(double dx, double dy) {
+        double len = Math.sqrt(dx * dx + dy * dy);
+        if (len == 0)
+            return 1;
+        final VertexStore store = polygon.store;
+        final double[] xs = store.x, ys = store.y;
+        double left = Double.MAX_VALUE, top = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE, bottom = -Double.MAX_VALUE;
+        for (int i = 0; i < store.size; i++) {
+            left = Math.min(left, Math.min(xs[i], xs[i] + dx));
+            top = Math.min(top, Math.min(ys[i], ys[i] + dy));
+            right = Math.max(right, Math.max(xs[i], xs[i] + dx));
+            bottom = Math.max(bottom, Math.max(ys[i], ys[i] + dy));
+        }
+        if (!collectCandidates(left, top, right, bottom))
+            return 1;
+
+        final double minT = TOUCH_DIST / len;
+        double t = 1;
+        for (Vertex u : candidates) {
+            if (u.polygon == polygon)
+                continue;
+            double ux = u.getX(), uy = u.getY();
+            double wx = u.next.getX(), wy = u.next.getY();
+            for (int i = 0; i < store.size; i++) {
+                int j = store.next(i);
+                // moving vertex against foreign wall
+                t = Math.min(t, rayHit(xs[i], ys[i], dx, dy, ux, uy, wx, wy, minT));
+                // foreign vertex against moving wall, in the frame of the moving polygon
+                t = Math.min(t, rayHit(ux, uy, -dx, -dy, xs[i], ys[i], xs[j], ys[j], minT));
+            }
+        }
+        if (t < 1)
+            t = Math.max(0, t - CONTACT_GAP / len);
+        return t;
+    }
+
+    /**
+     * @param alpha rotation around the centroid in radians, sign gives direction
+     * @return part of alpha the polygon can be rotated by without hitting anything, same sign as alpha
+     */
+    public double getRotationLimit(double alpha) {
+        if (alpha == 0)
+            return 0;
+        final double sign = Math.signum(alpha);
+        final double ampl = Math.abs(alpha);
+        final VertexStore store = polygon.store;
+        final double[] xs = store.x, ys = store.y;
+        final double cx = store.centroidX(), cy = store.centroidY();
+        double radius = 0;
+        for (int i = 0; i < store.size; i++) {
+            radius = Math.max(radius, Math.hypot(xs[i] - cx, ys[i] - cy));
+        }
+        if (radius == 0)
+            return alpha;
+        if (!collectCandidates(cx - radius, cy - radius, cx + radius, cy + radius))
+            return alpha;
+
+        final double minS = TOUCH_DIST / radius;
+        double s = ampl;
+        for (Vertex u : candidates) {
+            if (u.polygon == polygon)
+                continue;
+            double ux = u.getX(), uy = u.getY();
+            double wx = u.next.getX(), wy = u.next.getY();
+            for (int i = 0; i < store.size; i++) {
+                int j = store.next(i);
+                // rotating vertex against foreign wall
+                s = Math.min(s, arcHit(cx, cy, xs[i], ys[i], sign, ux, uy, wx, wy, minS, s));
+                // foreign vertex against rotating wall, in the frame of the rotating polygon
+                s = Math.min(s, arcHit(cx, cy, ux, uy, -sign, xs[i], ys[i], xs[j], ys[j], minS, s));
+            }
+        }
+        if (s < ampl)
+            s = Math.max(0, s - CONTACT_GAP / radius);
+        return s * sign;
+    }
+
+    /**
+     * @param k scale factor around the centroid relative to the current size
+     * @return factor between 1 and k the polygon can be scaled by without hitting anything
+     */
+    public double getScaleLimit(double k) {
+        if (k == 1)
+            return 1;
+        final VertexStore store = polygon.store;
+        final double[] xs = store.x, ys = store.y;
+        final double cx = store.centroidX(), cy = store.centroidY();
+        double left = Double.MAX_VALUE, top = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE, bottom = -Double.MAX_VALUE;
+        double radius = 0;
+        for (int i = 0; i < store.size; i++) {
+            double x = cx + (xs[i] - cx) * k;
+            double y = cy + (ys[i] - cy) * k;
+            left = Math.min(left, Math.min(xs[i], x));
+            top = Math.min(top, Math.min(ys[i], y));
+            right = Math.max(right, Math.max(xs[i], x));
+            bottom = Math.max(bottom, Math.max(ys[i], y));
+            radius = Math.max(radius, Math.hypot(xs[i] - cx, ys[i] - cy));
+        }
+        if (radius == 0)
+            return k;
+        if (!collectCandidates(left, top, right, bottom))
+            return k;
+
+        // scaling is a linear motion, so the contact is searched as a distance from k = 1
+        final double minD = TOUCH_DIST / radius;
+        double d = Math.abs(k - 1);
+        final double sign = Math.signum(k - 1);
+        for (Vertex u : candidates) {
+            if (u.polygon == polygon)
+                continue;
+            double ux = u.getX(), uy = u.getY();
+            double wx = u.next.getX(), wy = u.next.getY();
+            for (int i = 0; i < store.size; i++) {
+                int j = store.next(i);
+                // scaled vertex against foreign wall
+                double hit = scaledPointHit(cx, cy, xs[i], ys[i], ux, uy, wx, wy);
+                if ((hit - 1) * sign >= minD)
+                    d = Math.min(d, (hit - 1) * sign);
+                // foreign vertex against scaled wall
+                hit = scaledSegmentHit(cx, cy, ux, uy, xs[i], ys[i], xs[j], ys[j]);
+                if ((hit - 1) * sign >= minD)
+                    d = Math.min(d, (hit - 1) * sign);
+            }
+        }
+        if (d < Math.abs(k - 1))
+            d = Math.max(0, d - CONTACT_GAP / radius);
+        return 1 + d * sign;
+    }
+
+    /**
+     * Fills candidates with walls near the given area, unless the broad phase
+     * shows that no other room is there at all.
+     * @return whether there is anything to test against
+     */
+    private boolean collectCandidates(double left, double top, double right, double bottom) {
+        candidates.clear();
+        boolean found = false;
+        for (Polygon poly : polygon.drawingView.broadPhase.query(left, top, right, bottom, neighbours)) {
+            if (poly != polygon)
+                found = true;
+        }
+        if (found)
+            polygon.drawingView.segmentIndex.query(left, top, right, bottom, candidates);
+        return found;
+    }
+
+    /**
+     * Point C + k * (P - C) against segment AB.
+     * @return k at which the point touches the segment, or NaN
+     */
+    static double scaledPointHit(double cx, double cy, double px, double py,
+                                 double ax, double ay, double bx, double by) {
+        double ex = bx - ax, ey = by - ay;
+        double nx = -ey, ny = ex;
+        double denom = nx * (px - cx) + ny * (py - cy);
+        if (denom == 0)
+            return Double.NaN;
+        double k = (nx * (ax - cx) + ny * (ay - cy)) / denom;
+        double qx = cx + (px - cx) * k, qy = cy + (py - cy) * k;
+        double t = ((qx - ax) * ex + (qy - ay) * ey) / (ex * ex + ey * ey);
+        return t >= 0 && t <= 1 ? k : Double.NaN;
+    }
+
+    /**
+     * Point Q against segment C + k * (A - C), C + k * (B - C).
+     * @return k at which the segment touches the point, or NaN
+     */
+    static double scaledSegmentHit(double cx, double cy, double qx, double qy,
+                                   double ax, double ay, double bx, double by) {
+        double ex = bx - ax, ey = by - ay;
+        double denom = ex * (ay - cy) - ey * (ax - cx);
+        if (denom == 0)
+            return Double.NaN;
+        double k = (ex * (qy - cy) - ey * (qx - cx)) / denom;
+        if (k <= 0)
+            return Double.NaN;
+        double sx = cx + (ax - cx) * k, sy = cy + (ay - cy) * k;
+        double t = ((qx - sx) * ex + (qy - sy) * ey) / (k * (ex * ex + ey * ey));
+        return t >= 0 && t <= 1 ? k : Double.NaN;
+    }
+
+    /**
+     * Point P rotated around C by sign * s against segment AB.
+     * Solves n * (C + R(theta) * (P - C) - A) = 0, where n is the normal of AB,
+     * which is a * cos(theta) + b * sin(theta) = -k.
+     * @return smallest s in [minS; maxS] at which the point touches the segment, or +inf
+     */
+    static double arcHit(double cx, double cy, double px, double py, double sign,
+                         double ax, double ay, double bx, double by, double minS, double maxS) {
+        double ex = bx - ax, ey = by - ay;
+        double e2 = ex * ex + ey * ey;
+        if (e2 == 0)
+            return Double.POSITIVE_INFINITY;
+        double nx = -ey, ny = ex;
+        double rx = px - cx, ry = py - cy;
+        double a = nx * rx + ny * ry;
+        double b = ny * rx - nx * ry;
+        double k = nx * (cx - ax) + ny * (cy - ay);
+        double r = Math.hypot(a, b);
+        if (r == 0 || Math.abs(k) > r)
+            return Double.POSITIVE_INFINITY;
+        double phi = Math.atan2(b, a);
+        double delta = Math.acos(-k / r);
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = -1; i <= 1; i += 2) {
+            double s = normalizeAngle(sign * (phi + i * delta));
+            if (s < minS || s > maxS || s >= best)
+                continue;
+            double theta = sign * s;
+            double cos = Math.cos(theta), sin = Math.sin(theta);
+            double qx = cx + rx * cos - ry * sin;
+            double qy = cy + rx * sin + ry * cos;
+            double t = ((qx - ax) * ex + (qy - ay) * ey) / e2;
+            if (t >= 0 && t <= 1)
+                best = s;
+        }
+        return best;
+    }
+
+    private static double normalizeAngle(double angle) {
+        angle %= Math.PI * 2;
+        if (angle < 0)
+            angle += Math.PI * 2;
+        return angle;
+    }
+
+    /**
+     * Ray P + t * D against segment AB.
+     * @return smallest t >= minT at which the ray touches the segment, or +inf
+     */
+    static double rayHit(double px, double py, double dx, double dy,
+                         double ax, double ay, double bx, double by, double minT) {
+        double ex = bx - ax, ey = by - ay;
+        double denom = dx * ey - dy * ex;
+        if (denom == 0)
+            return Double.POSITIVE_INFINITY; // parallel, sliding along the wall is allowed
+        double qx = ax - px, qy = ay - py;
+        double t = (qx * ey - qy * ex) / denom;
+        double s = (qx * dy - qy * dx) / denom;
+        if (t < minT || s < 0 || s > 1)
+            return Double.POSITIVE_INFINITY;
+        return t;
+    }
+}
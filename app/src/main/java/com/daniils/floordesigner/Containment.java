@@ -0,0 +1,112 @@
+package com.daniils.floordesigner;
+
+import java.util.Arrays;
+
+/**
+ * Point-in-polygon structure prepared once per shape of the room.
+ * Vertex y coordinates split the plane into horizontal slabs; for every slab
+ * the edges crossing it are known in advance, so a query is a binary search
+ * for the slab plus an even-odd count over its few edges.
+ * Must be invalidated whenever vertices of the polygon move.
+ */
+class Containment {
+    private final Polygon polygon;
+    private boolean valid = false;
+
+    // edge e is x = x0[e] + (y - y0[e]) * slope[e]
+    private double[] x0 = new double[0], y0 = new double[0], slope = new double[0];
+    private double[] minY = new double[0], maxY = new double[0];
+    private double[] slabY = new double[0];
+    private int slabCount = 0;
+    // edges crossing slab i are slabEdges[slabStart[i] .. slabStart[i + 1])
+    private int[] slabStart = new int[0];
+    private int[] slabEdges = new int[0];
+
+    Containment(Polygon polygon) {
+        this.polygon = polygon;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    boolean contains(double x, double y) {
+        if (!valid)
+            build();
+        if (slabCount < 2 || y < slabY[0] || y >= slabY[slabCount - 1])
+            return false;
+        int slab = Arrays.binarySearch(slabY, 0, slabCount, y);
+        if (slab < 0)
+            slab = -slab - 2;
+        boolean inside = false;
+        for (int i = slabStart[slab]; i < slabStart[slab + 1]; i++) {
+            int e = slabEdges[i];
+            if (x0[e] + (y - y0[e]) * slope[e] > x)
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    private void build() {
+        VertexStore store = polygon.store;
+        int n = store.size;
+        if (x0.length < n) {
+            x0 = new double[n];
+            y0 = new double[n];
+            slope = new double[n];
+            minY = new double[n];
+            maxY = new double[n];
+            slabY = new double[n];
+            slabStart = new int[n + 1];
+        }
+        int e;
+        for (e = 0; e < n; e++) {
+            int next = store.next(e);
+            double ax = store.x[e], ay = store.y[e];
+            double bx = store.x[next], by = store.y[next];
+            x0[e] = ax;
+            y0[e] = ay;
+            slope[e] = ay == by ? 0 : (bx - ax) / (by - ay);
+            minY[e] = Math.min(ay, by);
+            maxY[e] = Math.max(ay, by);
+            slabY[e] = ay;
+        }
+        // distinct sorted y coordinates are the slab borders
+        Arrays.sort(slabY, 0, n);
+        slabCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (slabCount == 0 || slabY[i] != slabY[slabCount - 1])
+                slabY[slabCount++] = slabY[i];
+        }
+        // count edges per slab, then fill them in
+        Arrays.fill(slabStart, 0);
+        int total = 0;
+        for (e = 0; e < n; e++) {
+            if (minY[e] == maxY[e])
+                continue;
+            int lo = Arrays.binarySearch(slabY, 0, slabCount, minY[e]);
+            int hi = Arrays.binarySearch(slabY, 0, slabCount, maxY[e]);
+            for (int slab = lo; slab < hi; slab++)
+                slabStart[slab + 1]++;
+            total += hi - lo;
+        }
+        for (int slab = 0; slab < slabCount; slab++)
+            slabStart[slab + 1] += slabStart[slab];
+        if (slabEdges.length < total)
+            slabEdges = new int[total];
+        for (e = 0; e < n; e++) {
+            if (minY[e] == maxY[e])
+                continue;
+            int lo = Arrays.binarySearch(slabY, 0, slabCount, minY[e]);
+            int hi = Arrays.binarySearch(slabY, 0, slabCount, maxY[e]);
+            for (int slab = lo; slab < hi; slab++) {
+                // slabStart[slab] is used as a cursor and restored below
+                slabEdges[slabStart[slab]++] = e;
+            }
+        }
+        for (int slab = slabCount - 1; slab > 0; slab--)
+            slabStart[slab] = slabStart[slab - 1];
+        slabStart[0] = 0;
+        valid = true;
+    }
+}
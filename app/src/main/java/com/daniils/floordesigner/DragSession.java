@@ -0,0 +1,104 @@
+package com.daniils.floordesigner;
+
+import com.daniils.floordesigner.util.Geometry;
+
+import java.util.LinkedList;
+
+/**
+ * Drag of a vertex or of the wall starting at it, from touchDown to touchUp.
+ * Only the dragged vertices move, so the walls next to them stay where they were,
+ * and the snapping directions along them and the crossings of those directions
+ * are found once, when the drag starts. A move only picks the crossing closest to the vertex.
+ * The vertex is snapped to that crossing when the drag is committed.
+ */
+class DragSession {
+    private final Vertex v;
+    private final MovementCorrector corrector;
+    private final LinkedList<Point[]> directionalLines;
+    // directions from prev and from next, see MovementCorrector.angles
+    private final Point[][] dirsFirst, dirsSecond;
+    // crossings of a direction from prev with a direction from next
+    private final double[] crossX, crossY;
+    private final int[] crossFirst, crossSecond;
+    private int crossCount = 0;
+    private boolean fixedOnEdge = false;
+
+    DragSession(Vertex v, LinkedList<Point[]> directionalLines) {
+        this.v = v;
+        this.directionalLines = directionalLines;
+        corrector = new MovementCorrector(v);
+        directionalLines.clear();
+        if (v.next.selected) {
+            // a dragged wall keeps its direction and is not snapped
+            dirsFirst = dirsSecond = new Point[0][];
+        } else {
+            dirsFirst = MovementCorrector.getAllDirections(new Point[] { v.prev.getPoint(), v.prev.prev.getPoint() });
+            dirsSecond = MovementCorrector.getAllDirections(new Point[] { v.next.getPoint(), v.next.next.getPoint() });
+        }
+        int n = dirsFirst.length * dirsSecond.length;
+        crossX = new double[n];
+        crossY = new double[n];
+        crossFirst = new int[n];
+        crossSecond = new int[n];
+        double[] p = new double[2];
+        for (int i = 0; i < dirsFirst.length; i++) {
+            Point[] dir1 = dirsFirst[i];
+            for (int j = 0; j < dirsSecond.length; j++) {
+                Point[] dir2 = dirsSecond[j];
+                if (!Geometry.intersection(dir1[0].x, dir1[0].y, dir1[1].x, dir1[1].y,
+                        dir2[0].x, dir2[0].y, dir2[1].x, dir2[1].y, true, p))
+                    continue;
+                crossX[crossCount] = p[0];
+                crossY[crossCount] = p[1];
+                crossFirst[crossCount] = i;
+                crossSecond[crossCount] = j;
+                crossCount++;
+            }
+        }
+    }
+
+    /**
+     * Moves the dragged vertices towards dest and shows the directions the vertex would be snapped along.
+     * @return false if the movement has been stopped by a contact
+     */
+    boolean move(Point dest) {
+        fixedOnEdge = corrector.performMovement(dest);
+        showDirections(nearestCrossing());
+        return !fixedOnEdge;
+    }
+
+    /**
+     * Snaps the vertex to the nearest crossing, unless the drag has ended against another wall.
+     */
+    void commit() {
+        if (fixedOnEdge)
+            return;
+        int i = nearestCrossing();
+        if (i < 0)
+            return;
+        showDirections(i);
+        corrector.performMovement(new Point(crossX[i], crossY[i]));
+    }
+
+    private int nearestCrossing() {
+        double x = v.getX(), y = v.getY();
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        for (int i = 0; i < crossCount; i++) {
+            double dist = Geometry.dist2(x, y, crossX[i], crossY[i]);
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private void showDirections(int crossing) {
+        directionalLines.clear();
+        if (crossing < 0)
+            return;
+        directionalLines.add(dirsFirst[crossFirst[crossing]]);
+        directionalLines.add(dirsSecond[crossSecond[crossing]]);
+    }
+}
@@ -6,13 +6,13 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 
+import com.daniils.floordesigner.util.Geometry;
 import com.daniils.floordesigner.util.Maths;
-import com.daniils.floordesigner.util.Util;
+import com.daniils.floordesigner.view.Label;
+import com.daniils.floordesigner.view.RenderContext;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
 
 public class LengthFrame {
     private ArrayList<Double>
@@ -24,6 +24,13 @@ public class LengthFrame {
     private int pointsCount = 0;
     private final int OFFSET = 90;
     private final int TEXT_OFFSET = 30;
+    private final int TEXT_SIZE = 30;
+    // segment labels of each side, by the index of the segment's end in the side's coordinates
+    private final ArrayList<Label>
+            leftLabels = new ArrayList<>(),
+            rightLabels = new ArrayList<>(),
+            topLabels = new ArrayList<>(),
+            bottomLabels = new ArrayList<>();
 
     private void reset() {
         left = new ArrayList<>();
@@ -37,13 +44,13 @@ public class LengthFrame {
         topBound = Double.MAX_VALUE;
         pointsCount = 0;
     }
-    public void update(LinkedList<Polygon> polygons) {
+    public void update(ArrayList<Polygon> polygons) {
         reset();
         for (Polygon poly : polygons) {
             for (Vertex v : poly.vertices) {
                 if (Maths.equals(v.getAngle(), Math.PI)) continue;
-                addPoint(v.outlineA);
-                addPoint(v.outlineB);
+                addPoint(v.getOutlineA());
+                addPoint(v.getOutlineB());
             }
         }
         left.add(topBound);
@@ -90,20 +97,23 @@ public class LengthFrame {
 
         pointsCount++;
     }
-    public void draw(Canvas canvas) {
+    public void draw(Canvas canvas, RenderContext rc) {
         if (pointsCount < 2) return;
-        drawLine(left, leftBound - OFFSET, false, canvas);
-        drawLine(right, rightBound + OFFSET, false, canvas);
-        drawLine(top, topBound - OFFSET, true, canvas);
-        drawLine(bottom, bottomBound + OFFSET, true, canvas);
+        drawLine(left, leftLabels, leftBound - OFFSET, false, canvas, rc);
+        drawLine(right, rightLabels, rightBound + OFFSET, false, canvas, rc);
+        drawLine(top, topLabels, topBound - OFFSET, true, canvas, rc);
+        drawLine(bottom, bottomLabels, bottomBound + OFFSET, true, canvas, rc);
     }
 
-    private void drawLine(ArrayList<Double> coords, double baseCoordinate, boolean horizontal, Canvas canvas) {
-        Iterator<Double> it = coords.iterator();
-        double last = it.next();
-        while (it.hasNext()) {
-            double cur = it.next();
-            if (it.hasNext() && Math.abs(last - cur) < 10) continue;
+    private void drawLine(ArrayList<Double> coords, ArrayList<Label> labels, double baseCoordinate,
+                          boolean horizontal, Canvas canvas, RenderContext rc) {
+        while (labels.size() < coords.size())
+            labels.add(new Label(0, ""));
+        double last = coords.get(0);
+        for (int i = 1; i < coords.size(); i++) {
+            double cur = coords.get(i);
+            boolean hasNext = i + 1 < coords.size();
+            if (hasNext && Math.abs(last - cur) < 10) continue;
             double x1, x2, y1, y2;
             if (horizontal) {
                 x1 = last;
@@ -114,23 +124,24 @@ public class LengthFrame {
                 y2 = cur;
                 x1 = x2 = baseCoordinate;
             }
-            drawLineSegment(x1, x2, y1, y2, horizontal, canvas);
+            // margin covers the dashes and the text drawn next to the line
+            if (rc.viewport.intersects(Math.min(x1, x2), Math.min(y1, y2),
+                    Math.max(x1, x2), Math.max(y1, y2), TEXT_OFFSET + TEXT_SIZE))
+                drawLineSegment(x1, x2, y1, y2, horizontal, labels.get(i), canvas, rc);
             last = cur;
 
         }
     }
 
-    private void drawLineSegment(double x1, double x2, double y1, double y2, boolean horizontal, Canvas canvas) {
+    private void drawLineSegment(double x1, double x2, double y1, double y2, boolean horizontal,
+                                 Label label, Canvas canvas, RenderContext rc) {
         final int DASH = 10;
-        Paint paint = Util.getPaint(Color.rgb(0, 255 * 2 / 3, 0));
+        Paint paint = rc.reset(rc.framePaint, Color.rgb(0, 255 * 2 / 3, 0));
         paint.setStrokeWidth(10);
         canvas.drawLine((float)x1, (float)y1, (float)x2, (float)y2, paint);
 
         paint.setStrokeWidth(3);
-        paint.setTextSize(30);
-        double dist = new Point(x1, y1).sub(new Point(x2, y2)).length();
-        String text = Double.toString(Util.setPrecision(dist * Maths.M_TO_INCH, 0));
-        float width = paint.measureText(text);
+        paint.setTextSize(TEXT_SIZE);
         double textX, textY;
         if (horizontal) {
             canvas.drawLine((float)x1, (float)y1 - DASH, (float)x1, (float)y2 + DASH, paint);
@@ -143,14 +154,17 @@ public class LengthFrame {
             textX = x1 - TEXT_OFFSET;
             textY = (y1 + y2) / 2;
         }
-        if (text.equals("0.0")) return;
+        if (!rc.detailLevel.showText()) return;
+        double dist = Geometry.dist(x1, y1, x2, y2);
+        paint.setTypeface(Typeface.MONOSPACE);
+        if (label.update(dist * Maths.M_TO_INCH, paint).getValue() == 0) return;
+        float width = label.getWidth();
         canvas.save();
         canvas.translate((float)textX, (float)textY);
         if (!horizontal)
             canvas.rotate(-90);
         paint.setColor(Color.BLACK);
-        paint.setTypeface(Typeface.MONOSPACE);
-        canvas.drawText(text, -width / 2, 0, paint);
+        canvas.drawText(label.getText(), -width / 2, 0, paint);
         canvas.restore();
     }
 }
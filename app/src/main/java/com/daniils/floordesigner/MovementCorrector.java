@@ -2,11 +2,12 @@
 
 package com.daniils.floordesigner;
 
-import com.daniils.floordesigner.util.Binsearch;
+import com.daniils.floordesigner.util.RootFinder;
+import com.daniils.floordesigner.util.Geometry;
 import com.daniils.floordesigner.util.Maths;
+import com.daniils.floordesigner.view.DrawingView;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 class MovementCorrector {
 
@@ -14,80 +15,216 @@ class MovementCorrector {
             0, 0.125 * Math.PI, 0.185 * Math.PI, Math.PI * 0.250, Math.PI * 0.375 , 0.500 * Math.PI, 0.750 * Math.PI, 1.000 * Math.PI,
             1.125 * Math.PI, 1.185 * Math.PI, Math.PI * 1.250, Math.PI * 1.375 , 1.500 * Math.PI, 1.750 * Math.PI
     };
-    private final double BINSEARCH_E = 0.1;
+    private static final double CONTACT_E = 0.1;
+    private static final int CONTACT_BUDGET = 10;
+    // kept between the walls and what they approach in a step taken without checks
+    private static final double CLEARANCE_MARGIN = 1;
+    private static final double MIN_ANGLE_SIN = Math.sin(Vertex.MIN_ANGLE);
 
     private final Vertex v;
-    private final LinkedList<Point[]> directionalLines;
-    private Point crossingPoint;
+    private final ArrayList<Vertex> candidates = new ArrayList<>();
 
-    private Point tmpVP, tmpVNP;
+    private double tmpX, tmpY, tmpNextX, tmpNextY;
 
-    MovementCorrector(Vertex v, LinkedList<Point[]> directionalLines) {
+    MovementCorrector(Vertex v) {
         this.v = v;
-        if (directionalLines == null)
-            this.directionalLines = new LinkedList<>();
-        else
-            this.directionalLines = directionalLines;
-
-        this.directionalLines.clear();
-
-        recalculateCrossingPoint();
     }
 
     public boolean performMovement(Point dest) {
         boolean fixedOnEdge = moveToDestination(dest);
 
-        refreshOutlineAndBisectors();
+        // only the outline around the moved vertices is computed again
+        v.polygon.updateOutline();
 
         return fixedOnEdge;
     }
 
+    /**
+     * Moves towards dest in steps no longer than the clearance of the moved walls,
+     * which can't make them cross anything, so open space is crossed at once.
+     * Close to other walls it steps by DRAG_MOVEMENT_STEP and stops at the contact.
+     * @return whether the movement has been stopped by a contact
+     */
     private boolean moveToDestination(Point dest) {
-        final Point offset = v.next.selected ? Maths.calculateSegmentOffset(v.p, v.next.p, dest) : dest.sub(v.p);
-        moveByOffset(offset);
-        if (hasIntersection()) {
-            loadState();
-            double len = Binsearch.perform(0, offset.length(), BINSEARCH_E, x -> {
-                moveByOffset(offset.setLength(x));
-                boolean its = hasIntersection();
+        final Point offset = v.next.selected ? Maths.calculateSegmentOffset(v.getPoint(), v.next.getPoint(), dest) : dest.sub(v.getPoint());
+        double remaining = offset.length();
+        if (remaining == 0)
+            return false;
+        final double ux = offset.x / remaining, uy = offset.y / remaining;
+        while (remaining > 0) {
+            double step = Math.min(remaining, DrawingView.DRAG_MOVEMENT_STEP);
+            // a safe step shorter than the fixed one is not worth it: it would be followed by many more
+            double safe = clearance(remaining, false) - CLEARANCE_MARGIN;
+            if (safe >= step) {
+                step = Math.min(safe, remaining);
+                moveByOffset(ux * step, uy * step);
+                remaining -= step;
+                continue;
+            }
+            moveByOffset(ux * step, uy * step);
+            if (hasIntersection()) {
+                final double limit = step;
+                double fMax = contactDistance(limit);
                 loadState();
-                return !its;
-            });
-            moveByOffset(offset.setLength(len));
-            return true;
+                double fMin = contactDistance(limit);
+                double len;
+                if (fMin > 0) {
+                    len = RootFinder.illinois(0, step, fMin, fMax, CONTACT_E, CONTACT_BUDGET, x -> {
+                        moveByOffset(ux * x, uy * x);
+                        double d = contactDistance(limit);
+                        loadState();
+                        return d;
+                    });
+                } else {
+                    // walls touching already, e.g. a shared one, give no sign change to interpolate on
+                    len = RootFinder.lastTrue(0, step, CONTACT_E, CONTACT_BUDGET, x -> {
+                        moveByOffset(ux * x, uy * x);
+                        boolean free = !hasIntersection();
+                        loadState();
+                        return free;
+                    });
+                }
+                moveByOffset(ux * len, uy * len);
+                return true;
+            }
+            remaining -= step;
         }
         return false;
     }
 
+    /**
+     * Signed clearance for the contact search: it changes about linearly as the walls approach
+     * each other and goes on through the contact, so the search interpolates instead of halving.
+     * It is positive only where hasIntersection fails and the walls are still CONTACT_E apart:
+     * a wall ending right on another one is not seen as crossing it from its own end.
+     */
+    private double contactDistance(double limit) {
+        double d = clearance(limit, true) - CONTACT_E;
+        return hasIntersection() ? Math.min(d, -CONTACT_E) : d;
+    }
+
+    /**
+     * How far the dragged vertices can move in any direction without changing whether
+     * hasIntersection holds, capped at radius. Moved walls are kept apart from other walls,
+     * from folding onto the walls they meet, and above the minimum length.
+     * @param signed whether to measure how deep the constraints are broken rather than return 0
+     */
+    private double clearance(double radius, boolean signed) {
+        // moved walls are identified by their first vertex: prev and v, and also next for a segment
+        boolean segment = v.next.selected;
+        if (segment && v.polygon.vertices.size() < 4)
+            return 0;
+        Vertex first = v.prev, last = segment ? v.next : v;
+        Vertex before = first.prev, after = last.next;
+        double out = radius;
+        // walls joined with the moved ones stay in place
+        out = Math.min(out, foldClearance(first.getX(), first.getY(), before.getX(), before.getY(),
+                v.getX(), v.getY()));
+        out = Math.min(out, foldClearance(after.getX(), after.getY(), after.next.getX(), after.next.getY(),
+                last.getX(), last.getY()));
+        if (segment) {
+            // the moved segment keeps its direction d, it folds onto a joined wall when it is along d
+            double dx = v.next.getX() - v.getX(), dy = v.next.getY() - v.getY();
+            out = Math.min(out, foldClearance(first.getX(), first.getY(), first.getX() - dx, first.getY() - dy,
+                    v.getX(), v.getY()));
+            out = Math.min(out, foldClearance(after.getX(), after.getY(), after.getX() + dx, after.getY() + dy,
+                    last.getX(), last.getY()));
+        } else {
+            out = Math.min(out, angleClearance(v.prev, v, v.next));
+        }
+        // a wall with one moved end changes its length by at most the step
+        out = Math.min(out, Geometry.dist(first.getX(), first.getY(), v.getX(), v.getY()) - first.minLength);
+        out = Math.min(out, Geometry.dist(last.getX(), last.getY(), after.getX(), after.getY()) - last.minLength);
+        if (out <= 0 && !signed)
+            return 0;
+        // other walls, looked for only as far as the step may reach
+        double reach = Math.max(out, 0);
+        double l = Double.MAX_VALUE, t = Double.MAX_VALUE, r = -Double.MAX_VALUE, b = -Double.MAX_VALUE;
+        for (Vertex u = first; ; u = u.next) {
+            l = Math.min(l, u.getX());
+            t = Math.min(t, u.getY());
+            r = Math.max(r, u.getX());
+            b = Math.max(b, u.getY());
+            if (u == after)
+                break;
+        }
+        v.polygon.drawingView.segmentIndex.query(l - reach, t - reach, r + reach, b + reach, candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            Vertex w = candidates.get(i);
+            // two moved walls may approach each other twice as fast
+            double k = w.polygon == v.polygon && isMoved(w, first, after) ? 0.5 : 1;
+            for (Vertex u = first; u != after; u = u.next) {
+                // joined walls are covered by the fold checks above
+                if (u == w || u.next == w || w.next == u)
+                    continue;
+                out = Math.min(out, k * Geometry.segmentSeparation(u.getX(), u.getY(), u.next.getX(), u.next.getY(),
+                        w.getX(), w.getY(), w.next.getX(), w.next.getY()));
+            }
+        }
+        return signed ? out : Math.max(out, 0);
+    }
+
+    /**
+     * How far (x, y) can move before the wall from A to it meets the ray from A through B
+     * at less than Vertex.MIN_ANGLE.
+     */
+    private static double foldClearance(double ax, double ay, double bx, double by, double x, double y) {
+        // after a move by d the point is at most d closer to the ray and d further from A
+        double r = Geometry.dist(ax, ay, x, y);
+        return (Geometry.distToRay(ax, ay, bx, by, x, y) - r * MIN_ANGLE_SIN) / (1 + MIN_ANGLE_SIN);
+    }
+
+    /**
+     * How far m can move while a and b are still seen from it at least Vertex.MIN_ANGLE apart.
+     */
+    private static double angleClearance(Vertex a, Vertex m, Vertex b) {
+        // such points lie in two disks whose boundaries pass through a and b
+        double len = Geometry.dist(a.getX(), a.getY(), b.getX(), b.getY());
+        if (len == 0)
+            return 0;
+        double radius = len / (2 * MIN_ANGLE_SIN);
+        double k = radius * Math.cos(Vertex.MIN_ANGLE) / len;
+        double nx = (b.getY() - a.getY()) * k, ny = (a.getX() - b.getX()) * k;
+        double mx = (a.getX() + b.getX()) / 2, my = (a.getY() + b.getY()) / 2;
+        return radius - Math.min(Geometry.dist(mx + nx, my + ny, m.getX(), m.getY()),
+                Geometry.dist(mx - nx, my - ny, m.getX(), m.getY()));
+    }
+
+    private static boolean isMoved(Vertex w, Vertex first, Vertex after) {
+        for (Vertex u = first; u != after; u = u.next) {
+            if (u == w)
+                return true;
+        }
+        return false;
+    }
+
+
     private void saveState() {
-        tmpVP = new Point(v.p);
-        tmpVNP = new Point(v.next.p);
+        tmpX = v.getX();
+        tmpY = v.getY();
+        tmpNextX = v.next.getX();
+        tmpNextY = v.next.getY();
     }
 
     private void loadState() {
-        v.p = new Point(tmpVP);
-        v.next.p = new Point(tmpVNP);
+        v.setPoint(tmpX, tmpY);
+        v.next.setPoint(tmpNextX, tmpNextY);
+        notifyMoved();
     }
 
-    public void moveByOffset(Point offset) {
+    public void moveByOffset(double dx, double dy) {
         saveState();
-        v.p = v.p.add(offset);
+        v.setPoint(tmpX + dx, tmpY + dy);
         if (v.next.selected) {
-            v.next.p = v.next.p.add(offset);
+            v.next.setPoint(tmpNextX + dx, tmpNextY + dy);
         }
+        notifyMoved();
     }
 
-    private void refreshOutlineAndBisectors() {
-        v.prev.updateBisector();
-        v.updateBisector();
-        v.next.updateBisector();
-        v.next.next.updateBisector();
-
-        v.prev.updateOutline();
-        v.updateOutline();
-        v.next.updateOutline();
-        v.next.next.updateOutline();
-        v.polygon.updateOutline();
+    private void notifyMoved() {
+        v.polygon.vertexMoved(v);
+        if (v.next.selected)
+            v.polygon.vertexMoved(v.next);
     }
 
     private boolean hasIntersection() {
@@ -97,18 +234,6 @@ class MovementCorrector {
                 v.prev.getIntersection() != null;
     }
 
-    public void recalculateCrossingPoint() {
-        if (v.next.selected) return;
-        Point[] firstEdge = { v.prev.p, v.prev.prev.p };
-        Point[] secondEdge = { v.next.p, v.next.next.p };
-        crossingPoint = getBestDirectionsCrossing(firstEdge, secondEdge, v.p);
-    }
-
-    public void snap() {
-        if (v.next.selected) return;
-        performMovement(crossingPoint);
-    }
-
     public static Point[][] getAllDirections(final Point[] edge) {
         double[] vals = MovementCorrector.angles;
         Point[][] directions = new Point[vals.length][];
@@ -120,29 +245,6 @@ class MovementCorrector {
         return directions;
     }
 
-    public Point getBestDirectionsCrossing(final Point[] firstEdge, final Point[] secondEdge, final Point a) {
-        Point[][] dirsFirst = getAllDirections(firstEdge);
-        Point[][] dirsSecond = getAllDirections(secondEdge);
-
-        Point bestPoint = null;
-        double bestDist = Double.MAX_VALUE;
-        for (Point[] dir1 : dirsFirst) {
-            for (Point[] dir2 : dirsSecond) {
-                Point p = Maths.intersection(dir1[0], dir1[1], dir2[0], dir2[1]);
-                if (p == null) continue;
-                double dist = Maths.dist(a, p);
-                if (dist < bestDist) {
-                    directionalLines.clear();
-                    directionalLines.add(dir1);
-                    directionalLines.add(dir2);
-                    bestDist = dist;
-                    bestPoint = p;
-                }
-            }
-        }
-        return bestPoint;
-    }
-
     public static Point[] getBestDirection(final Point[] edge, final Point a) {
         Point[] bestDirection = null;
         double bestDist = Double.MAX_VALUE;
@@ -0,0 +1,203 @@
+package com.daniils.floordesigner;
+
+import com.daniils.floordesigner.util.Geometry;
+
+/**
+ * Keeps the outline points of a room in VertexStore up to date.
+ * Wall directions and bisectors are cached, so only the vertices next to a moved one
+ * are computed again, with square roots instead of atan2, cos and sin.
+ * Translations and rotations of the whole room are applied to the cached data as they are.
+ */
+class OutlineEngine {
+    // bisectors shorter than this stay inside the outline, longer ones are cut off by the walls
+    private static final double MAX_BISECTOR = 2 * Vertex.THICKNESS;
+    // sine of half the angle between walls folded onto each other
+    private static final double MIN_HALF_SIN = 1e-16;
+
+    private final VertexStore store;
+    private final RoomMetrics metrics;
+    // unit direction of the wall from vertex i to the next one
+    private final double[] dirX, dirY;
+    // bisector of the angle at vertex i, long enough to end THICKNESS away from both walls;
+    // the outer corner lies as far on the other side of the vertex
+    final double[] bisX, bisY;
+    private final double[] bisLength;
+    private final DirtySet walls, bisectors, outlines;
+    private final double[] tmp = new double[2];
+
+    OutlineEngine(VertexStore store, RoomMetrics metrics) {
+        this.store = store;
+        this.metrics = metrics;
+        int n = store.size;
+        dirX = new double[n];
+        dirY = new double[n];
+        bisX = new double[n];
+        bisY = new double[n];
+        bisLength = new double[n];
+        walls = new DirtySet(n);
+        bisectors = new DirtySet(n);
+        outlines = new DirtySet(n);
+        for (int i = 0; i < n; i++) {
+            walls.add(i);
+            bisectors.add(i);
+            outlines.add(i);
+        }
+    }
+
+    /**
+     * Must be called after the position of vertex i has been changed.
+     */
+    void vertexMoved(int i) {
+        int prev = prev(i), next = store.next(i);
+        walls.add(prev);
+        walls.add(i);
+        bisectors.add(prev);
+        bisectors.add(i);
+        bisectors.add(next);
+        // outlines are cut by the bisectors of the neighbours
+        for (int k = 0, j = prev(prev); k < 5; k++, j = store.next(j))
+            outlines.add(j);
+    }
+
+    /**
+     * Must be called after the room has been scaled. Walls keep their thickness,
+     * so unlike a rotation this can't be applied to the outline as a transform.
+     */
+    void scaled() {
+        for (int i = 0; i < store.size; i++) {
+            // directions of very short walls don't survive the rounding of scaled positions
+            walls.add(i);
+            bisectors.add(i);
+            outlines.add(i);
+        }
+    }
+
+    /**
+     * Rotates the cached directions. Positions and outline points are rotated by VertexStore.
+     */
+    void rotate(double alpha) {
+        double cos = Math.cos(alpha), sin = Math.sin(alpha);
+        for (int i = 0; i < store.size; i++) {
+            double x = dirX[i], y = dirY[i];
+            dirX[i] = x * cos - y * sin;
+            dirY[i] = x * sin + y * cos;
+            x = bisX[i];
+            y = bisY[i];
+            bisX[i] = x * cos - y * sin;
+            bisY[i] = x * sin + y * cos;
+        }
+    }
+
+    /**
+     * Computes what has been marked since the last update.
+     * @return whether any outline point has changed
+     */
+    boolean update() {
+        for (int k = 0; k < walls.count; k++)
+            updateWall(walls.get(k));
+        for (int k = 0; k < bisectors.count; k++)
+            updateBisector(bisectors.get(k));
+        for (int k = 0; k < outlines.count; k++)
+            updateOutline(outlines.get(k));
+        boolean changed = outlines.count > 0;
+        walls.clear();
+        bisectors.clear();
+        outlines.clear();
+        return changed;
+    }
+
+    private void updateWall(int i) {
+        int j = store.next(i);
+        double len = Geometry.dist(store.x[i], store.y[i], store.x[j], store.y[j]);
+        if (len == 0) {
+            // same as atan2(0, 0)
+            dirX[i] = 1;
+            dirY[i] = 0;
+        } else {
+            dirX[i] = (store.x[j] - store.x[i]) / len;
+            dirY[i] = (store.y[j] - store.y[i]) / len;
+        }
+    }
+
+    private void updateBisector(int i) {
+        int prev = prev(i);
+        // the angle goes from the next wall to the previous one, the half of it is found
+        // from its cosine and sine with the more precise of the half angle formulas
+        double ux = dirX[i], uy = dirY[i];
+        double wx = -dirX[prev], wy = -dirY[prev];
+        double cos = Geometry.dot(ux, uy, wx, wy);
+        double sin = Geometry.cross(ux, uy, wx, wy);
+        double halfCos, halfSin;
+        if (cos >= 0) {
+            halfCos = Math.sqrt((1 + cos) / 2);
+            if (sin < 0)
+                halfCos = -halfCos;
+            halfSin = sin / (2 * halfCos);
+        } else {
+            halfSin = Math.sqrt((1 - cos) / 2);
+            halfCos = sin / (2 * halfSin);
+        }
+        halfSin = Math.max(halfSin, MIN_HALF_SIN);
+        double length = Vertex.THICKNESS / halfSin;
+        bisLength[i] = length;
+        bisX[i] = (ux * halfCos - uy * halfSin) * length;
+        bisY[i] = (ux * halfSin + uy * halfCos) * length;
+    }
+
+    private void updateOutline(int i) {
+        double x = store.x[i], y = store.y[i];
+        double length = bisLength[i];
+        if (length > MAX_BISECTOR) {
+            // a sharp corner is cut off by a line across the bisector
+            double k = MAX_BISECTOR / length;
+            double cx = x - bisX[i] * k, cy = y - bisY[i] * k;
+            int prev = prev(i), next = store.next(i);
+            double ox = x - bisX[i], oy = y - bisY[i];
+            Geometry.projectToLine(store.x[prev] - bisX[prev], store.y[prev] - bisY[prev], ox, oy, cx, cy, tmp);
+            store.ax[i] = tmp[0];
+            store.ay[i] = tmp[1];
+            Geometry.projectToLine(ox, oy, store.x[next] - bisX[next], store.y[next] - bisY[next], cx, cy, tmp);
+            store.bx[i] = tmp[0];
+            store.by[i] = tmp[1];
+        } else {
+            store.ax[i] = store.bx[i] = x - bisX[i];
+            store.ay[i] = store.by[i] = y - bisY[i];
+        }
+        metrics.outlineMoved(i);
+    }
+
+    private int prev(int i) {
+        return i == 0 ? store.size - 1 : i - 1;
+    }
+
+    /**
+     * Indices marked since the last update, each listed once.
+     */
+    private static class DirtySet {
+        private final boolean[] marked;
+        private final int[] list;
+        int count = 0;
+
+        DirtySet(int size) {
+            marked = new boolean[size];
+            list = new int[size];
+        }
+
+        void add(int i) {
+            if (marked[i])
+                return;
+            marked[i] = true;
+            list[count++] = i;
+        }
+
+        int get(int k) {
+            return list[k];
+        }
+
+        void clear() {
+            for (int k = 0; k < count; k++)
+                marked[list[k]] = false;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.daniils.floordesigner;
+
+import com.daniils.floordesigner.util.Geometry;
+import com.daniils.floordesigner.view.DrawingView;
+
+import java.util.ArrayList;
+
+/**
+ * Hit testing for touches. Looks only at walls from the cells of SegmentIndex
+ * around the touch and at rooms from BroadPhase containing it,
+ * so its cost does not depend on the size of the plan.
+ */
+public class Picker {
+    private final DrawingView drawingView;
+    private final ArrayList<Vertex> candidates = new ArrayList<>();
+    private final ArrayList<Vertex> nearest = new ArrayList<>();
+    private final ArrayList<Polygon> rooms = new ArrayList<>();
+    private final double[] rel = new double[2];
+
+    public Picker(DrawingView drawingView) {
+        this.drawingView = drawingView;
+    }
+
+    /**
+     * Collects at most k vertices closer than radius to (x, y), nearest first.
+     * Output list is cleared before filling.
+     */
+    public ArrayList<Vertex> nearestVertices(double x, double y, double radius, int k, ArrayList<Vertex> out) {
+        out.clear();
+        // every vertex is the start of a segment, so it is found as a candidate itself
+        drawingView.segmentIndex.query(x - radius, y - radius, x + radius, y + radius, candidates);
+        for (Vertex v : candidates) {
+            double d = Geometry.dist(v.getX(), v.getY(), x, y);
+            if (d >= radius)
+                continue;
+            int i = out.size();
+            while (i > 0 && Geometry.dist(out.get(i - 1).getX(), out.get(i - 1).getY(), x, y) > d)
+                i--;
+            if (i >= k)
+                continue;
+            out.add(i, v);
+            if (out.size() > k)
+                out.remove(k);
+        }
+        return out;
+    }
+
+    public Vertex nearestVertex(double x, double y, double radius) {
+        nearestVertices(x, y, radius, 1, nearest);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Segment closest to (x, y) among those whose perpendicular from the point
+     * falls onto them and is shorter than radius.
+     * @return first vertex of the segment or null
+     */
+    public Vertex nearestSegment(double x, double y, double radius) {
+        Vertex out = null;
+        drawingView.segmentIndex.query(x - radius, y - radius, x + radius, y + radius, candidates);
+        for (Vertex v : candidates) {
+            double ax = v.getX(), ay = v.getY(), bx = v.next.getX(), by = v.next.getY();
+            Geometry.relativeCoords(ax, ay, bx, by, x, y, rel);
+            double dist = Math.abs(rel[1]);
+            if (dist < radius && rel[0] >= 0 && rel[0] <= Geometry.dist(ax, ay, bx, by)) {
+                radius = dist;
+                out = v;
+            }
+        }
+        return out;
+    }
+
+    public Polygon roomAt(double x, double y) {
+        for (Polygon poly : drawingView.broadPhase.query(x, y, x, y, rooms)) {
+            if (poly.contains(x, y))
+                return poly;
+        }
+        return null;
+    }
+}
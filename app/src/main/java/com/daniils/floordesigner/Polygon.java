@@ -7,7 +7,6 @@ import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.widget.EditText;
 import android.widget.SeekBar;
@@ -16,17 +15,19 @@ import android.widget.TextView;
 import com.daniils.floordesigner.activity.EditorActivity;
 import com.daniils.floordesigner.data.PolygonData;
 import com.daniils.floordesigner.data.WindowData;
-import com.daniils.floordesigner.util.Binsearch;
 import com.daniils.floordesigner.util.Maths;
+import com.daniils.floordesigner.util.RootFinder;
 import com.daniils.floordesigner.util.Util;
 import com.daniils.floordesigner.view.AssetsManager;
 import com.daniils.floordesigner.view.DrawingView;
+import com.daniils.floordesigner.view.Label;
+import com.daniils.floordesigner.view.RenderContext;
+import com.daniils.floordesigner.view.Viewport;
 import com.daniils.floordesigner.windows.Window;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
-import java.util.List;
 
 import static android.view.View.VISIBLE;
 
@@ -36,12 +37,26 @@ public class Polygon extends Selectable {
     public Vertex firstVertex;
     public final DrawingView drawingView;
     public LinkedList<Vertex> vertices = new LinkedList<>();
+    VertexStore store;
+    private RoomMetrics metrics;
+    OutlineEngine outline;
     private double square = 0;
     public String label = "";
     public final int LABEL_THICKNESS = 40;
+    // how far walls, labels and buttons of the room may reach out of its bounds
+    public static final double DRAW_MARGIN = 200;
     private double rotation = 0, scale = 0.5;
-    private Rect aabb = new Rect();
+    // position in BroadPhase
+    int sweepIndex = -1;
     public boolean locked = false;
+    private final ArrayList<Polygon> neighbours = new ArrayList<>();
+    private final CollisionSolver collisionSolver = new CollisionSolver(this);
+    private final Containment containment = new Containment(this);
+    // walls and floor, rebuilt on the next draw after the room has changed
+    private final Path outlinePath = new Path();
+    private final Path fillPath = new Path();
+    private final Label areaLabel = new Label(2, " ft^2");
+    private boolean pathsValid = false;
 
     public Polygon(DrawingView drawingView, ArrayList<Point> path) {
         this.drawingView = drawingView;
@@ -53,14 +68,7 @@ public class Polygon extends Selectable {
             Collections.reverse(path);
             recreateFromPath(path);
         }
-        // update outline
-        for (Vertex v : vertices) {
-            v.updateBisector();
-        }
-        for (Vertex v : vertices) {
-            v.updateOutline();
-        }
-        updateSquare();
+        updateOutline();
     }
 
     public Polygon(DrawingView drawingView, PolygonData data) {
@@ -73,10 +81,15 @@ public class Polygon extends Selectable {
 
     private void recreateFromPath(ArrayList<Point> path) {
         // build polygon
-        firstVertex = new Vertex(this, path.get(0), true);
+        store = new VertexStore(path.size());
+        for (int i = 0; i < path.size(); i++) {
+            store.x[i] = path.get(i).x;
+            store.y[i] = path.get(i).y;
+        }
+        firstVertex = new Vertex(this, 0, true);
         Vertex prevInner = firstVertex;
         for (int i = 1; i < path.size(); i++) {
-            Vertex nextInner = new Vertex(this, path.get(i), false);
+            Vertex nextInner = new Vertex(this, i, false);
             prevInner.next = nextInner;
             nextInner.prev = prevInner;
             prevInner = nextInner;
@@ -84,6 +97,8 @@ public class Polygon extends Selectable {
         prevInner.next = firstVertex;
         firstVertex.prev = prevInner;
         updateVerticesList();
+        metrics = new RoomMetrics(store);
+        outline = new OutlineEngine(store, metrics);
     }
 
     public boolean canExist() {
@@ -97,113 +112,138 @@ public class Polygon extends Selectable {
         return true;
     }
 
-    public void drawOuterLine(Canvas g, Paint paint) {
-        boolean first = true;
-        Path path = new Path();
-        for (Vertex v : vertices) {
-            Point a = v.outlineA;
-            Point b = v.outlineB;
-            Point c = v.next.outlineA;
-            /*paint.setStyle(Paint.Style.FILL);
-            int r = (int)(paint.getStrokeWidth() / 2);
-            g.drawRect((int)a.x - r, (int)a.y - r, (int)a.x + r, (int)a.y + r, paint);
-            g.drawRect((int)b.x - r, (int)b.y - r, (int)b.x + r, (int)b.y + r, paint);
-            paint.setStyle(Paint.Style.STROKE);*/
-            if (first)
-                path.moveTo((float) a.x, (float) a.y);
-            path.lineTo((float) b.x, (float) b.y);
-            path.lineTo((float) c.x, (float) c.y);
-            first = false;
-        }
+    public void drawOuterLine(Canvas g, RenderContext rc) {
+        Paint paint = rc.paint;
+        updatePaths();
         paint.setColor(wallsColor);
         paint.setStyle(Paint.Style.FILL);
-        g.drawPath(path, paint);
+        g.drawPath(outlinePath, paint);
     }
 
-    public void drawInnerLine(Canvas g, Paint paint) {
-        boolean first = true;
-        Path path = new Path();
-
+    public void drawInnerLine(Canvas g, RenderContext rc) {
+        Paint paint = rc.paint;
+        updatePaths();
         paint.setStrokeWidth(10);
         paint.setStyle(Paint.Style.STROKE);
         paint.setColor(Color.GREEN);
-        int id = 0;
-        for (Vertex v : vertices) {
+        Vertex v = firstVertex;
+        do {
+            int i = v.index, j = v.next.index;
             if (v.selected && v.next.selected) {
-                g.drawLine((int)v.p.x, (int)v.p.y, (int)v.next.p.x, (int)v.next.p.y, paint);
+                g.drawLine((int)store.x[i], (int)store.y[i], (int)store.x[j], (int)store.y[j], paint);
             }
-            if (first)
-                path.moveTo((float) v.p.x, (float) v.p.y);
-            path.lineTo((float)v.next.p.x, (float)v.next.p.y);
-            first = false;
-        }
+            v = v.next;
+        } while (v != firstVertex);
         paint.setColor(fillColor);
         paint.setStyle(Paint.Style.FILL);
-        g.drawPath(path, paint);
+        g.drawPath(fillPath, paint);
 
-        for (Vertex v : vertices) {
-            v.drawWindows(g);
-        }
+        do {
+            if (v.isVisible(rc.viewport))
+                v.drawWindows(g, rc);
+            v = v.next;
+        } while (v != firstVertex);
     }
 
-    public void drawInfo(Canvas g, Paint paint) {
-        for (Vertex v : vertices) {
-            v.drawInfo(g, paint);
+    private void updatePaths() {
+        if (pathsValid)
+            return;
+        outlinePath.rewind();
+        fillPath.rewind();
+        for (int i = 0; i < store.size; i++) {
+            int j = store.next(i);
+            if (i == 0) {
+                outlinePath.moveTo((float) store.ax[i], (float) store.ay[i]);
+                fillPath.moveTo((float) store.x[i], (float) store.y[i]);
+            }
+            outlinePath.lineTo((float) store.bx[i], (float) store.by[i]);
+            outlinePath.lineTo((float) store.ax[j], (float) store.ay[j]);
+            fillPath.lineTo((float) store.x[j], (float) store.y[j]);
         }
+        pathsValid = true;
     }
 
-    public void drawUI(Canvas g, Paint paint) {
-        AssetsManager assetsManager = ((EditorActivity)drawingView.getContext()).assetsManager;
-        for (Vertex v : vertices) {
-            Bitmap im1 = assetsManager.moveVertexIcon;
-            Matrix mat = new Matrix();
+    /**
+     * Must be called after positions or outline of vertices have been changed.
+     */
+    void invalidatePaths() {
+        pathsValid = false;
+    }
+
+    private void invalidateWindows() {
+        Vertex v = firstVertex;
+        do {
+            v.invalidateWindows();
+            v = v.next;
+        } while (v != firstVertex);
+    }
 
+    public void drawInfo(Canvas g, RenderContext rc) {
+        Vertex v = firstVertex;
+        do {
+            if (v.isVisible(rc.viewport))
+                v.drawInfo(g, rc);
+            v = v.next;
+        } while (v != firstVertex);
+    }
 
+    public boolean isVisible(Viewport viewport) {
+        return viewport.intersects(metrics.getLeft(), metrics.getTop(), metrics.getRight(), metrics.getBottom(),
+                DRAW_MARGIN);
+    }
 
+    public void drawUI(Canvas g, RenderContext rc) {
+        Paint paint = rc.paint;
+        Matrix mat = rc.matrix;
+        double[] coords = rc.coords;
+        AssetsManager assetsManager = ((EditorActivity)drawingView.getContext()).assetsManager;
+        Bitmap im1 = assetsManager.moveVertexIcon;
+        Bitmap im2 = assetsManager.moveLineIcon;
+        Vertex v = firstVertex;
+        do {
+            int i = v.index, j = v.next.index;
             if (selected || v.selected) {
-                mat.setTranslate((float) v.p.x - im1.getWidth() / 2f,
-                        (float) v.p.y - im1.getHeight() / 2f);
+                mat.setTranslate((float) store.x[i] - im1.getWidth() / 2f,
+                        (float) store.y[i] - im1.getHeight() / 2f);
                 g.drawBitmap(im1, mat, paint);
             }
 
-
             if (selected || (v.selected && v.next.selected)) {
-                Bitmap im2 = assetsManager.moveLineIcon;
-                Point c = v.next.p.add(v.p).scale(0.5f);
-                c.x -= im2.getWidth() / 2f;
-                c.y -= im2.getHeight() / 2f;
-                mat = new Matrix();
-                double theta = Maths.theta(v.p, v.next.p);
+                double cx = (store.x[i] + store.x[j]) / 2 - im2.getWidth() / 2f;
+                double cy = (store.y[i] + store.y[j]) / 2 - im2.getHeight() / 2f;
+                mat.reset();
+                double theta = Math.atan2(store.y[j] - store.y[i], store.x[j] - store.x[i]);
                 mat.postRotate((float) Math.toDegrees(theta) + 90,
                         (float) im2.getWidth() / 2f,
                         (float) im2.getHeight() / 2f);
-                mat.postTranslate((float) c.x, (float) c.y);
+                mat.postTranslate((float) cx, (float) cy);
                 g.drawBitmap(im2, mat, paint);
             }
 
-            for (Window window : v.windows) {
+            for (int k = 0; k < v.getWindowCount(); k++) {
+                Window window = v.getWindow(k);
                 if (window.selected) {
-                    Point[] ps = window.getAbsoluteCoordinates();
+                    window.getAbsoluteCoordinates(coords);
 
-                    mat = new Matrix();
-                    mat.setTranslate((float) ps[0].x - im1.getWidth() / 2f,
-                            (float) ps[0].y - im1.getHeight() / 2f);
+                    mat.setTranslate((float) coords[0] - im1.getWidth() / 2f,
+                            (float) coords[1] - im1.getHeight() / 2f);
                     g.drawBitmap(im1, mat, paint);
 
-                    mat = new Matrix();
-                    mat.setTranslate((float) ps[1].x - im1.getWidth() / 2f,
-                            (float) ps[1].y - im1.getHeight() / 2f);
+                    mat.setTranslate((float) coords[2] - im1.getWidth() / 2f,
+                            (float) coords[3] - im1.getHeight() / 2f);
                     g.drawBitmap(im1, mat, paint);
                 }
             }
-        }
+            v = v.next;
+        } while (v != firstVertex);
 
-        String text = Util.setPrecision(square, 2) + " ft^2\n" + label;
+        if (!rc.detailLevel.showText())
+            return;
         paint.setColor(Color.BLACK);
         paint.setTextSize(LABEL_THICKNESS);
         paint.setStyle(Paint.Style.FILL_AND_STROKE);
         paint.setTypeface(Typeface.MONOSPACE);
-        Util.drawMultiline(g, paint, getCentroid(), text);
+        areaLabel.update(square, label, paint).drawCentered(g, paint, store.centroidX(), store.centroidY());
     }
 
     public void remove() {
@@ -223,8 +263,11 @@ public class Polygon extends Selectable {
     }
 
     public boolean contains(Point p) {
-        com.snatik.polygon.Polygon poly = getPolygon();
-        return poly.contains(new com.snatik.polygon.Point(p.x, p.y));
+        return containment.contains(p.x, p.y);
+    }
+
+    public boolean contains(double x, double y) {
+        return containment.contains(x, y);
     }
 
     @Override
@@ -238,21 +281,24 @@ public class Polygon extends Selectable {
             System.out.println("Problem 2");
 
 
-        translatePolygonMathematically(delta);
-        boolean collision = false;
+        // exact time of impact, binary search is only the fallback for already touching walls
+        double limit = collisionSolver.getTranslationLimit(delta.x, delta.y);
+        final Point allowed = delta.scale(limit);
+        translatePolygonMathematically(allowed);
+        boolean collision = limit < 1;
         if (getIntersection() != null) {
             collision = true;
-            translatePolygonMathematically(delta.scale(-1));
-            double len = Binsearch.perform(0, delta.length(), 1, x -> {
-                Point v = delta.setLength(x);
-                translatePolygonMathematically(v);
+            translatePolygonMathematically(allowed.scale(-1));
+            final double length = delta.length();
+            final double ux = delta.x / length, uy = delta.y / length;
+            double len = RootFinder.lastTrue(0, allowed.length(), 1, RootFinder.DEFAULT_BUDGET, x -> {
+                translatePolygonMathematically(ux * x, uy * x);
                 boolean g = getIntersection() == null;
-                translatePolygonMathematically(v.scale(-1));
+                translatePolygonMathematically(-ux * x, -uy * x);
                 return g;
             });
             translatePolygonMathematically(delta.setLength(len));
         }
-        drawingView.invalidate();
 
         return !collision;
     }
@@ -275,13 +321,12 @@ public class Polygon extends Selectable {
         }
 
 
-        com.snatik.polygon.Polygon polygon = getPolygon();
-        for (Polygon poly : drawingView.polygons) {
+        for (Polygon poly : drawingView.broadPhase.query(getLeft(), getTop(), getRight(), getBottom(), neighbours)) {
             if (poly == this) continue;
-            if (!poly.aabb.intersect(aabb)) continue;
-            for (Vertex v : poly.vertices) {
-                if (polygon.contains(new com.snatik.polygon.Point(v.p.x, v.p.y))) {
-                    return v.p;
+            VertexStore other = poly.store;
+            for (int i = 0; i < other.size; i++) {
+                if (containment.contains(other.x[i], other.y[i])) {
+                    return new Point(other.x[i], other.y[i]);
                 }
             }
         }
@@ -294,7 +339,7 @@ public class Polygon extends Selectable {
 
         int vertexId = 0;
         for (Vertex v : vertices) {
-            data.path.add(new Point(v.p));
+            data.path.add(v.getPoint());
             for (Window window : v.windows) {
                 WindowData windowData = new WindowData();
                 windowData.left = window.left;
@@ -313,54 +358,49 @@ public class Polygon extends Selectable {
     }
 
     public void updateSquare() {
-        double sum = 0.0;
-        for (Vertex v : vertices) {
-            Point a = v.outlineA;
-            Point b = v.outlineB;
-            Point c = v.next.outlineA;
-            sum +=  (a.x * b.y) - (a.y * b.x);
-            sum +=  (b.x * c.y) - (b.y * c.x);
-        }
-        sum /= 2;
-        square = Util.setPrecision(sum * Maths.M_TO_INCH * Maths.M_TO_INCH, 2);
+        square = Util.setPrecision(metrics.getArea() * Maths.M_TO_INCH * Maths.M_TO_INCH, 2);
         square = Math.abs(square);
     }
 
-    public void updateAABB() {
-        List<Double> vals = new ArrayList<>();
-        for (Vertex v : vertices) {
-            vals.add(v.p.x);
-        }
-        Collections.sort(vals);
-        aabb.left = vals.get(0).intValue();
-        aabb.right = vals.get(vertices.size() - 1).intValue();
-        vals.clear();
-        for (Vertex v : vertices) {
-            vals.add(v.p.y);
-        }
-        Collections.sort(vals);
-        aabb.bottom = vals.get(0).intValue();
-        aabb.top = vals.get(vertices.size() - 1).intValue();
+    public double getLeft() {
+        return metrics.getLeft();
+    }
+
+    public double getTop() {
+        return metrics.getTop();
+    }
+
+    public double getRight() {
+        return metrics.getRight();
+    }
+
+    public double getBottom() {
+        return metrics.getBottom();
+    }
+
+    /**
+     * Total length of the walls, measured between vertices.
+     */
+    public double getPerimeter() {
+        return metrics.getPerimeter();
     }
 
     public Point getCentroid() {
-        double sx = 0, sy = 0;
-        for (Vertex v : vertices) {
-            sx += v.p.x;
-            sy += v.p.y;
-        }
-        return new Point(
-                sx / vertices.size(),
-                sy / vertices.size()
-        );
+        return new Point(store.centroidX(), store.centroidY());
     }
 
-    private com.snatik.polygon.Polygon getPolygon() {
-        com.snatik.polygon.Polygon.Builder builder = new com.snatik.polygon.Polygon.Builder();
-        for (Vertex v : vertices) {
-            builder.addVertex(new com.snatik.polygon.Point(v.p.x, v.p.y));
-        }
-        return builder.build();
+    /**
+     * Area shown on the room's label, in square feet.
+     */
+    public double getSquare() {
+        return square;
+    }
+
+    /**
+     * Copy of the vertex positions and the outline, which later changes of the room leave as it is.
+     */
+    public VertexStore copyStore() {
+        return new VertexStore(store);
     }
 
     public void showMenu() {
@@ -426,99 +466,114 @@ public class Polygon extends Selectable {
     }
 
     private void scalePolygonMathematically(double scale) {
-        Point center = getCentroid();
-        for (Vertex v : vertices) {
-            v.p = (v.p.sub(center)).
-                    scale(scale / this.scale).
-                    add(center);
-        }
+        store.scale(store.centroidX(), store.centroidY(), scale / this.scale);
+        outline.scaled();
+        verticesMoved();
         this.scale = scale;
     }
 
+    /**
+     * @return the closest to the requested scale the room can take without hitting other rooms
+     */
+    public double getMaxScale(double scale) {
+        return this.scale * collisionSolver.getScaleLimit(scale / this.scale);
+    }
+
     public void setScale(double scale) {
         scale = Math.max(0.1, scale);
 
-        double minScale = this.scale;
-        scalePolygonMathematically(scale);
+        final double minScale = this.scale;
+        final double allowed = getMaxScale(scale);
+        scalePolygonMathematically(allowed);
         if (getIntersection() != null) {
+            // walls were touching already, search only within the contact-free range
             double fs;
-            fs = Binsearch.perform(minScale, scale, 0.01, x -> {
+            fs = RootFinder.lastTrue(minScale, allowed, 0.01, RootFinder.DEFAULT_BUDGET, x -> {
                 scalePolygonMathematically(x);
                 return getIntersection() == null;
             });
             scalePolygonMathematically(fs);
         }
-        drawingView.invalidate();
         updateOutline();
+        drawingView.invalidate();
     }
 
     public void rotatePolygonMathematically(double rotation) {
         double alpha = Math.PI * (rotation - this.rotation);
-        Point center = getCentroid();
-        for (Vertex v : vertices) {
-            v.p = Maths.rotate(v.p.sub(center), alpha).add(center);
-        }
+        store.rotate(store.centroidX(), store.centroidY(), alpha);
+        outline.rotate(alpha);
+        verticesMoved();
         this.rotation = rotation;
     }
 
     public void setRotation(double rotation) {
-
         final double delta = rotation - this.rotation;
-        final double ampl = Math.abs(delta);
-        if (ampl == 0)
+        if (delta == 0)
             return;
-        final double sign = delta / ampl;
         final double r0 = this.rotation;
 
-
-        rotatePolygonMathematically(r0 + ampl * sign);
+        // first contact angle, rotation is measured in halves of the full turn
+        final double allowed = collisionSolver.getRotationLimit(Math.PI * delta) / Math.PI;
+        rotatePolygonMathematically(r0 + allowed);
         if (getIntersection() != null) {
-            //blockFurtherMovementDueToCollision();
-            final double step = Math.PI / 10;
-            class Kostyl {
-                boolean stop = false;
-            }
-            final Kostyl kostyl = new Kostyl();
-            double finalAmplitude = ampl;
-            double lastAmplitude = 0;
-            for (int i = 0; i * step < ampl && !kostyl.stop; i++) {
-                finalAmplitude = Binsearch.perform(step * i, Math.min(ampl, step * (i + 1)), 0.01, x -> {
-                    double theta = r0 + x * sign;
-                    rotatePolygonMathematically(theta);
-                    if (getIntersection() != null) {
-                        kostyl.stop = true;
-                        return false;
-                    } else {
-                        return true;
-                    }
-                });
-                rotatePolygonMathematically(r0 + finalAmplitude * sign);
-                if (getIntersection() != null) {
-                    finalAmplitude = lastAmplitude;
-                } else {
-                    lastAmplitude = finalAmplitude;
-                }
-            }
-            rotatePolygonMathematically(r0 + finalAmplitude * sign);
+            // walls were touching already, search only within the contact-free range
+            final double sign = Math.signum(delta);
+            double amplitude = RootFinder.lastTrue(0, Math.abs(allowed), 0.01, RootFinder.DEFAULT_BUDGET, x -> {
+                rotatePolygonMathematically(r0 + x * sign);
+                return getIntersection() == null;
+            });
+            rotatePolygonMathematically(r0 + amplitude * sign);
         }
         updateOutline();
         drawingView.invalidate();
     }
 
     public void translatePolygonMathematically(Point delta) {
-        for (Vertex v : vertices) {
-            v.p = v.p.add(delta);
-            v.outlineA = v.outlineA.add(delta);
-            v.outlineB = v.outlineB.add(delta);
-        }
+        translatePolygonMathematically(delta.x, delta.y);
     }
 
+    public void translatePolygonMathematically(double dx, double dy) {
+        store.translate(dx, dy);
+        // bounds are shifted, not recalculated
+        metrics.translate(dx, dy);
+        drawingView.segmentIndex.update(this);
+        drawingView.broadPhase.update(this);
+        containment.invalidate();
+        invalidatePaths();
+        invalidateWindows();
+    }
+
+    /**
+     * Must be called after positions of vertices have been changed.
+     */
+    void verticesMoved() {
+        metrics.recalculate();
+        drawingView.segmentIndex.update(this);
+        drawingView.broadPhase.update(this);
+        containment.invalidate();
+        invalidatePaths();
+        invalidateWindows();
+    }
+
+    void vertexMoved(Vertex v) {
+        SegmentIndex index = drawingView.segmentIndex;
+        index.update(v.prev);
+        index.update(v);
+        metrics.vertexMoved(v.index);
+        outline.vertexMoved(v.index);
+        drawingView.broadPhase.update(this);
+        containment.invalidate();
+        invalidatePaths();
+        v.prev.invalidateWindows();
+        v.invalidateWindows();
+    }
+
+    /**
+     * Brings the outline of vertices moved since the last call up to date.
+     */
     public void updateOutline() {
-        for (Vertex v : vertices) {
-            v.updateBisector();
-            v.updateOutline();
-        }
+        if (outline.update())
+            invalidatePaths();
         updateSquare();
-        updateAABB();
     }
 }
@@ -0,0 +1,169 @@
+package com.daniils.floordesigner;
+
+import com.daniils.floordesigner.util.Geometry;
+
+/**
+ * Area, perimeter and bounds of a room, kept up to date as its points move.
+ * Every wall contributes its own terms to the sums, so a moved vertex or outline point
+ * only replaces the terms of the two walls it belongs to. Bounds are searched for again
+ * only when the vertex lying on them moves inwards.
+ */
+class RoomMetrics {
+    private final VertexStore store;
+    // outline terms are taken relative to this point, so that translating the room doesn't change them
+    private double originX, originY;
+    // shoelace terms of the outline from A of vertex i through its B to A of the next vertex
+    private final double[] areaTerms;
+    // length of the wall from vertex i to the next one
+    private final double[] lengths;
+    private double areaSum, perimeter;
+    // bounds of vertex positions and the vertices lying on them
+    private double left, top, right, bottom;
+    private int leftIndex, topIndex, rightIndex, bottomIndex;
+
+    RoomMetrics(VertexStore store) {
+        this.store = store;
+        areaTerms = new double[store.size];
+        lengths = new double[store.size];
+        recalculate();
+    }
+
+    /**
+     * Computes everything from scratch, dropping rounding errors gathered by the updates.
+     */
+    void recalculate() {
+        originX = store.x[0];
+        originY = store.y[0];
+        areaSum = 0;
+        perimeter = 0;
+        for (int i = 0; i < store.size; i++) {
+            areaTerms[i] = areaTerm(i);
+            areaSum += areaTerms[i];
+            lengths[i] = length(i);
+            perimeter += lengths[i];
+        }
+        recalculateBounds();
+    }
+
+    /**
+     * Must be called after the position of vertex i has been changed.
+     */
+    void vertexMoved(int i) {
+        int prev = i == 0 ? store.size - 1 : i - 1;
+        updateLength(prev);
+        updateLength(i);
+        double x = store.x[i], y = store.y[i];
+        if ((i == leftIndex && x > left) || (i == rightIndex && x < right)
+                || (i == topIndex && y > top) || (i == bottomIndex && y < bottom)) {
+            recalculateBounds();
+            return;
+        }
+        if (x < left) {
+            left = x;
+            leftIndex = i;
+        }
+        if (x > right) {
+            right = x;
+            rightIndex = i;
+        }
+        if (y < top) {
+            top = y;
+            topIndex = i;
+        }
+        if (y > bottom) {
+            bottom = y;
+            bottomIndex = i;
+        }
+    }
+
+    /**
+     * Must be called after the outline points of vertex i have been changed.
+     */
+    void outlineMoved(int i) {
+        int prev = i == 0 ? store.size - 1 : i - 1;
+        updateAreaTerm(prev);
+        updateAreaTerm(i);
+    }
+
+    /**
+     * Must be called after the whole room has been shifted by (dx, dy).
+     */
+    void translate(double dx, double dy) {
+        originX += dx;
+        originY += dy;
+        left += dx;
+        right += dx;
+        top += dy;
+        bottom += dy;
+    }
+
+    /**
+     * Signed area inside the outline, positive for a clockwise room on the screen.
+     */
+    double getArea() {
+        return areaSum / 2;
+    }
+
+    double getPerimeter() {
+        return perimeter;
+    }
+
+    double getLeft() {
+        return left;
+    }
+
+    double getTop() {
+        return top;
+    }
+
+    double getRight() {
+        return right;
+    }
+
+    double getBottom() {
+        return bottom;
+    }
+
+    private void updateAreaTerm(int i) {
+        double term = areaTerm(i);
+        areaSum += term - areaTerms[i];
+        areaTerms[i] = term;
+    }
+
+    private void updateLength(int i) {
+        double length = length(i);
+        perimeter += length - lengths[i];
+        lengths[i] = length;
+    }
+
+    private double areaTerm(int i) {
+        int j = store.next(i);
+        double ax = store.ax[i] - originX, ay = store.ay[i] - originY;
+        double bx = store.bx[i] - originX, by = store.by[i] - originY;
+        double nx = store.ax[j] - originX, ny = store.ay[j] - originY;
+        return ax * by - ay * bx + bx * ny - by * nx;
+    }
+
+    private double length(int i) {
+        int j = store.next(i);
+        return Geometry.dist(store.x[i], store.y[i], store.x[j], store.y[j]);
+    }
+
+    private void recalculateBounds() {
+        leftIndex = topIndex = rightIndex = bottomIndex = 0;
+        for (int i = 1; i < store.size; i++) {
+            if (store.x[i] < store.x[leftIndex])
+                leftIndex = i;
+            if (store.x[i] > store.x[rightIndex])
+                rightIndex = i;
+            if (store.y[i] < store.y[topIndex])
+                topIndex = i;
+            if (store.y[i] > store.y[bottomIndex])
+                bottomIndex = i;
+        }
+        left = store.x[leftIndex];
+        right = store.x[rightIndex];
+        top = store.y[topIndex];
+        bottom = store.y[bottomIndex];
+    }
+}
@@ -0,0 +1,154 @@
+package com.daniils.floordesigner;
+
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Uniform grid over all wall segments of the plan.
+ * Segment is identified by its first vertex: v -> v.next.
+ * Every segment is stored in all cells its bounding box touches,
+ * so a query only has to look at segments lying near the queried area.
+ * Cells are keyed by a primitive long and kept once created, even when empty,
+ * so queries and updates during a drag allocate nothing.
+ */
+public class SegmentIndex {
+    public static final double CELL_SIZE = 200;
+
+    private final LongSparseArray<ArrayList<Vertex>> cells = new LongSparseArray<>();
+    // cell range (left, top, right, bottom) each indexed segment is stored in
+    private final HashMap<Vertex, int[]> ranges = new HashMap<>();
+    private int queryMark = 0;
+
+    public void add(Polygon poly) {
+        for (Vertex v : poly.vertices) {
+            if (ranges.containsKey(v))
+                continue;
+            int[] range = new int[4];
+            calculateRange(v, range);
+            ranges.put(v, range);
+            insert(v, range);
+        }
+    }
+
+    public void remove(Polygon poly) {
+        for (Vertex v : poly.vertices) {
+            int[] range = ranges.remove(v);
+            if (range != null)
+                erase(v, range);
+        }
+    }
+
+    public boolean contains(Polygon poly) {
+        return ranges.containsKey(poly.firstVertex);
+    }
+
+    public void update(Polygon poly) {
+        for (Vertex v : poly.vertices) {
+            update(v);
+        }
+    }
+
+    /**
+     * Must be called after position of v or v.next has been changed.
+     */
+    public void update(Vertex v) {
+        int[] range = ranges.get(v);
+        if (range == null)
+            return;
+        int l = cell(Math.min(v.getX(), v.next.getX()));
+        int t = cell(Math.min(v.getY(), v.next.getY()));
+        int r = cell(Math.max(v.getX(), v.next.getX()));
+        int b = cell(Math.max(v.getY(), v.next.getY()));
+        if (l == range[0] && t == range[1] && r == range[2] && b == range[3])
+            return;
+        erase(v, range);
+        range[0] = l;
+        range[1] = t;
+        range[2] = r;
+        range[3] = b;
+        insert(v, range);
+    }
+
+    /**
+     * Collects every indexed segment whose cells overlap the given rectangle.
+     * Each segment is reported once. Output list is cleared before filling.
+     */
+    public ArrayList<Vertex> query(double x1, double y1, double x2, double y2, ArrayList<Vertex> out) {
+        out.clear();
+        queryMark++;
+        int l = cell(Math.min(x1, x2));
+        int t = cell(Math.min(y1, y2));
+        int r = cell(Math.max(x1, x2));
+        int b = cell(Math.max(y1, y2));
+        for (int cx = l; cx <= r; cx++) {
+            for (int cy = t; cy <= b; cy++) {
+                ArrayList<Vertex> segments = cells.get(key(cx, cy));
+                if (segments == null)
+                    continue;
+                for (int i = 0; i < segments.size(); i++) {
+                    Vertex v = segments.get(i);
+                    if (v.indexMark == queryMark)
+                        continue;
+                    v.indexMark = queryMark;
+                    out.add(v);
+                }
+            }
+        }
+        return out;
+    }
+
+    public void clear() {
+        cells.clear();
+        ranges.clear();
+    }
+
+    private void calculateRange(Vertex v, int[] range) {
+        range[0] = cell(Math.min(v.getX(), v.next.getX()));
+        range[1] = cell(Math.min(v.getY(), v.next.getY()));
+        range[2] = cell(Math.max(v.getX(), v.next.getX()));
+        range[3] = cell(Math.max(v.getY(), v.next.getY()));
+    }
+
+    private void insert(Vertex v, int[] range) {
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                long key = key(cx, cy);
+                ArrayList<Vertex> segments = cells.get(key);
+                if (segments == null) {
+                    segments = new ArrayList<>();
+                    cells.put(key, segments);
+                }
+                segments.add(v);
+            }
+        }
+    }
+
+    private void erase(Vertex v, int[] range) {
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                ArrayList<Vertex> segments = cells.get(key(cx, cy));
+                if (segments == null)
+                    continue;
+                // order within a cell doesn't matter, the last segment takes the place of the removed one
+                int last = segments.size() - 1;
+                for (int i = 0; i <= last; i++) {
+                    if (segments.get(i) == v) {
+                        segments.set(i, segments.get(last));
+                        segments.remove(last);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cell(double coord) {
+        return (int)Math.floor(coord / CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long)cx << 32) | (cy & 0xffffffffL);
+    }
+}
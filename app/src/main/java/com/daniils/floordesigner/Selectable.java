@@ -50,4 +50,8 @@ public class Selectable {
     public void touchUp(Point point) {
 
     }
+
+    public void touchCancel() {
+        prevPoint = null;
+    }
 }
@@ -6,8 +6,11 @@ import android.graphics.Paint;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 
+import com.daniils.floordesigner.util.Geometry;
 import com.daniils.floordesigner.util.Maths;
-import com.daniils.floordesigner.util.Util;
+import com.daniils.floordesigner.view.Label;
+import com.daniils.floordesigner.view.RenderContext;
+import com.daniils.floordesigner.view.Viewport;
 import com.daniils.floordesigner.windows.Window;
 
 import java.util.ArrayList;
@@ -16,69 +19,86 @@ import java.util.TreeSet;
 
 public class Vertex extends Selectable {
     public static final double THICKNESS = 30;
+    // how far measurements and windows of a wall may reach out of its outline
+    public static final double DRAW_MARGIN = 4 * THICKNESS;
     public Vertex next, prev;
     public final boolean first;
-    public Point p;
-    public Point outlineA, outlineB;
     public final Polygon polygon;
+    // position of this vertex in polygon's VertexStore
+    public final int index;
     private LinkedList<Point[]> directionalLines = new LinkedList<>();
-    private Point bisector;
-    private double bisectorLength;
     public TreeSet<Window> windows = new TreeSet<>();
+    // same windows in the same order, for iterating without an iterator while drawing
+    private final ArrayList<Window> windowList = new ArrayList<>();
     public double minLength = 0;
-    private boolean fixedOnEdge = false;
+    private DragSession drag = null;
+    // used by SegmentIndex to report each segment only once per query
+    int indexMark = 0;
+    private final ArrayList<Vertex> candidates = new ArrayList<>();
+    private final double[] tmp = new double[2];
+    private final Label lengthLabel = new Label(2, "ft");
+    private final Label angleLabel = new Label(Label.WHOLE, "°");
+    // walls meeting at a smaller angle are folded onto each other
+    static final double MIN_ANGLE = Math.toRadians(1);
+    private static final double COS_MIN_ANGLE = Math.cos(MIN_ANGLE);
 
-    public Vertex(Polygon polygon, Point p, boolean first) {
+    public Vertex(Polygon polygon, int index, boolean first) {
         this.polygon = polygon;
-        this.p = p;
+        this.index = index;
         this.first = first;
     }
 
+    public double getX() {
+        return polygon.store.x[index];
+    }
+
+    public double getY() {
+        return polygon.store.y[index];
+    }
+
+    public Point getPoint() {
+        return new Point(polygon.store.x[index], polygon.store.y[index]);
+    }
+
+    public void setPoint(double x, double y) {
+        polygon.store.x[index] = x;
+        polygon.store.y[index] = y;
+    }
+
+    public void setPoint(Point p) {
+        setPoint(p.x, p.y);
+    }
+
+    public Point getOutlineA() {
+        return new Point(polygon.store.ax[index], polygon.store.ay[index]);
+    }
+
+    public Point getOutlineB() {
+        return new Point(polygon.store.bx[index], polygon.store.by[index]);
+    }
+
     @Override
-    public boolean processMovement(Point point) {
-        super.processMovement(point);
-        if (polygon.locked) return true;
-        if (selected) {
-            fixedOnEdge = new MovementCorrector(this, directionalLines)
-                    .performMovement(point);
-            return !fixedOnEdge;
-        }
-        return true;
+    public boolean touchDown(Point point) {
+        // the end of a dragged wall is moved by the session of its start
+        drag = selected && !prev.selected ? new DragSession(this, directionalLines) : null;
+        return super.touchDown(point);
     }
 
-    public void updateBisector() {
-        double angle = getAngle();
-        if (angle < Math.PI / 180 && false) {
-            bisectorLength = THICKNESS;
-        } else {
-            double outer = Math.PI * 2 - angle;
-            double alpha = outer / 2 - Math.PI / 2;
-            double cosine = Math.cos(alpha);
-            bisectorLength = THICKNESS / cosine;
-        }
-        double theta2 = Maths.theta(this.p, next.p);
-        double alpha = angle / 2;
-        double theta = theta2 + alpha;
-        bisector = Maths.getRotatedPoint(theta, bisectorLength);
-    }
-
-    public void updateOutline() {
-        double maxX = THICKNESS * 2;
-        double x = getBisectorLength();
-        if (Math.abs(x) > maxX) {
-            x = x / Math.abs(x) * maxX;
-            Point bis = getBisector(-x);
-            outlineA = Maths.projectTo(bis, prev.getBisector(true), getBisector(true));
-            outlineB = Maths.projectTo(bis, getBisector(true), next.getBisector(true));
-        } else {
-            Point bis = getBisector(-x);
-            outlineA = new Point(bis);
-            outlineB = new Point(bis);
-        }
+    @Override
+    public void touchMove(Point point) {
+        // MovementCorrector steps towards the point itself, as far as it is safe at once
+        if (prevPoint == null) return;
+        processMovement(point);
+        prevPoint = new Point(point);
     }
 
-    public double getBisectorLength() {
-        return bisectorLength;
+    @Override
+    public boolean processMovement(Point point) {
+        super.processMovement(point);
+        if (polygon.locked) return true;
+        if (selected && drag != null)
+            return drag.move(point);
+        return true;
     }
 
     @Override
@@ -90,26 +110,19 @@ public class Vertex extends Selectable {
     }
 
     public double getAngle() {
-        double theta1 = Maths.theta(prev.p, this.p);
-        double theta2 = Maths.theta(this.p, next.p);
+        double theta1 = Math.atan2(getY() - prev.getY(), getX() - prev.getX());
+        double theta2 = Math.atan2(next.getY() - getY(), next.getX() - getX());
         double delta = theta2 - theta1;
         double theta = Math.PI * 3 - delta;
         return theta % (Math.PI*2);
     }
 
-    public Point getBisector(double length) {
-        return bisector.setLength(length).add(this.p);
-    }
-
-    public Point getBisector(boolean outer) {
-        return bisector.scale(outer ? -1 : 1).add(this.p);
-    }
-
     public boolean trySelectWindow(ArrayList<Selectable> selection, Point p) {
-        double len = Maths.dist(this.p, next.p);
-        Point rel = Maths.getRelativeCoords(this.p, next.p, p).scale(1 / len);
+        double len = Geometry.dist(getX(), getY(), next.getX(), next.getY());
+        Geometry.relativeCoords(getX(), getY(), next.getX(), next.getY(), p.x, p.y, tmp);
+        double relX = tmp[0] / len;
         for (Window window : windows) {
-            if (rel.x >= window.left && rel.x <= window.right) {
+            if (relX >= window.left && relX <= window.right) {
                 window.setSelected(selection, true);
                 return true;
             }
@@ -117,53 +130,35 @@ public class Vertex extends Selectable {
         return false;
     }
 
-    public void drawInfo(Canvas g, Paint paint) {
+    public void drawInfo(Canvas g, RenderContext rc) {
+        Paint paint = rc.paint;
+        VertexStore store = polygon.store;
+        int i = index, prevI = prev.index, nextI = next.index;
+        double px = store.x[i], py = store.y[i];
+        double prevX = store.x[prevI], prevY = store.y[prevI];
+        double nextX = store.x[nextI], nextY = store.y[nextI];
+        double dist = Geometry.dist(store.bx[i], store.by[i], store.ax[nextI], store.ay[nextI]);
         // measurements
-        g.save();
-        g.translate((float)outlineB.x, (float)outlineB.y);
-        double theta = Maths.theta(p, next.p) * 180 / Math.PI;
-        double dist = Maths.dist(outlineB, next.outlineA);
-        g.rotate((float)theta);
-        //
-        g.translate(0, (float)THICKNESS * -0.5f);
-        paint.setColor(Color.GREEN);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(3);
-        g.drawLine(0, 0, (float)dist, 0, paint);
-        g.drawLine(0,  (float)THICKNESS * 0.5f, 0, (float)THICKNESS * -0.5f, paint);
-        g.drawLine((float)dist,  (float)THICKNESS * 0.5f, (float)dist, (float)THICKNESS * -0.5f, paint);
-        //
-        g.translate(0, (float)THICKNESS * -1f);
-        if (theta < - 90) {
-            g.rotate(180, (float)dist / 2, 0);
-        }
-        if (theta > 90) {
-            g.rotate(-180, (float)dist / 2, 0);
-        }
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.FILL_AND_STROKE);
-        paint.setTextSize((int) THICKNESS);
-        paint.setTypeface(Typeface.MONOSPACE);
-        String measurementText = Util.setPrecision(dist * Maths.M_TO_INCH, 2) + "ft";
-        int textX = (int)dist / 2 - (int)paint.measureText(measurementText) / 2;
-        g.drawText(measurementText, textX, (int)THICKNESS / 2, paint);
-        g.restore();
+        if (rc.detailLevel.showMeasurement(dist))
+            drawMeasurement(g, paint, Math.atan2(nextY - py, nextX - px) * 180 / Math.PI, dist);
         // dirs
         paint.setStyle(Paint.Style.STROKE);
         paint.setStrokeWidth(6);
         paint.setColor(Color.GREEN);
         paint.setAlpha(128);
-        for (Point[] line : directionalLines) {
-            final double len = 10000;
-            double dx = line[1].x - line[0].x;
-            double dy = line[1].y - line[0].y;
-            double x1 = line[0].x - dx * len;
-            double y1 = line[0].y - dy * len;
-            double x2 = line[1].x + dx * len;
-            double y2 = line[1].y + dy * len;
-            g.drawLine((float) x1, (float) y1, (float) x2, (float) y2, paint);
+        if (!directionalLines.isEmpty()) {
+            for (Point[] line : directionalLines) {
+                final double len = 10000;
+                double dx = line[1].x - line[0].x;
+                double dy = line[1].y - line[0].y;
+                double x1 = line[0].x - dx * len;
+                double y1 = line[0].y - dy * len;
+                double x2 = line[1].x + dx * len;
+                double y2 = line[1].y + dy * len;
+                g.drawLine((float) x1, (float) y1, (float) x2, (float) y2, paint);
+            }
+            directionalLines.clear();
         }
-        directionalLines.clear();
         paint.setAlpha(255);
         paint.setStrokeWidth(4);
         // some beautiful points
@@ -171,62 +166,135 @@ public class Vertex extends Selectable {
             paint.setStyle(Paint.Style.FILL);
             final int RAD = 7;
             paint.setColor(Color.RED);
-            g.drawCircle((int) p.x, (int) p.y, RAD, paint);
+            g.drawCircle((int) px, (int) py, RAD, paint);
             paint.setColor(Color.BLUE);
-            g.drawCircle((int) prev.p.x, (int) prev.p.y, RAD, paint);
+            g.drawCircle((int) prevX, (int) prevY, RAD, paint);
             paint.setColor(Color.GREEN);
-            g.drawCircle((int) next.p.x, (int) next.p.y, RAD, paint);
+            g.drawCircle((int) nextX, (int) nextY, RAD, paint);
         }
         // angle
-        if (selected || next.selected || prev.selected) {
-            double a = Maths.dist(prev.p, p);
-            double b = Maths.dist(p, next.p);
+        if ((selected || next.selected || prev.selected) && rc.detailLevel.showAngles()) {
+            double a = Geometry.dist(prevX, prevY, px, py);
+            double b = Geometry.dist(px, py, nextX, nextY);
             int RAD = (int)Math.min(THICKNESS *2, Math.min(a, b));
-            RectF rect = new RectF((int)p.x - RAD, (int)p.y - RAD, (int)p.x + RAD, (int)p.y + RAD);
+            RectF rect = rc.rect;
+            rect.set((int)px - RAD, (int)py - RAD, (int)px + RAD, (int)py + RAD);
             paint.setStyle(Paint.Style.STROKE);
             paint.setColor(Color.GREEN);
-            double startAngle = Maths.theta(p, next.p);
+            double startAngle = Math.atan2(nextY - py, nextX - px);
             double angle = Math.toDegrees(getAngle());
             g.drawArc(rect, (float)Math.toDegrees(startAngle), (float)angle, false, paint);
-            String text = ((int)(angle + 0.5) % 360) + "°";
-            int hw = (int)(paint.measureText(text) / 2);
-            int hh = (int)(paint.getTextSize() / 2);
-            Point bys = getBisector(THICKNESS);
-            int x = (int)(bys.x - hw);
-            int y = (int)(bys.y + hh);
             paint.setColor(Color.BLACK);
             paint.setStyle(Paint.Style.FILL_AND_STROKE);
             paint.setTextSize((int) THICKNESS);
             paint.setTypeface(Typeface.MONOSPACE);
-            g.drawText(text, x, y, paint);
+            angleLabel.update((int)(angle + 0.5) % 360, paint);
+            int hw = (int)(angleLabel.getWidth() / 2);
+            int hh = (int)(paint.getTextSize() / 2);
+            // THICKNESS along the bisector
+            double bx = polygon.outline.bisX[index], by = polygon.outline.bisY[index];
+            double k = THICKNESS / Math.sqrt(bx * bx + by * by);
+            int x = (int)(bx * k + px - hw);
+            int y = (int)(by * k + py + hh);
+            g.drawText(angleLabel.getText(), x, y, paint);
         }
     }
 
+    private void drawMeasurement(Canvas g, Paint paint, double theta, double dist) {
+        VertexStore store = polygon.store;
+        g.save();
+        g.translate((float)store.bx[index], (float)store.by[index]);
+        g.rotate((float)theta);
+        //
+        g.translate(0, (float)THICKNESS * -0.5f);
+        paint.setColor(Color.GREEN);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(3);
+        g.drawLine(0, 0, (float)dist, 0, paint);
+        g.drawLine(0,  (float)THICKNESS * 0.5f, 0, (float)THICKNESS * -0.5f, paint);
+        g.drawLine((float)dist,  (float)THICKNESS * 0.5f, (float)dist, (float)THICKNESS * -0.5f, paint);
+        //
+        g.translate(0, (float)THICKNESS * -1f);
+        if (theta < - 90) {
+            g.rotate(180, (float)dist / 2, 0);
+        }
+        if (theta > 90) {
+            g.rotate(-180, (float)dist / 2, 0);
+        }
+        paint.setColor(Color.BLACK);
+        paint.setStyle(Paint.Style.FILL_AND_STROKE);
+        paint.setTextSize((int) THICKNESS);
+        paint.setTypeface(Typeface.MONOSPACE);
+        lengthLabel.update(dist * Maths.M_TO_INCH, paint);
+        int textX = (int)dist / 2 - (int)lengthLabel.getWidth() / 2;
+        g.drawText(lengthLabel.getText(), textX, (int)THICKNESS / 2, paint);
+        g.restore();
+    }
+
     public Point getIntersection() {
-        double theta = Maths.theta(this.p, next.p, this.p, prev.p);
-        if (Math.min(theta, Math.PI * 2 - theta) <= Math.toRadians(1))
-            return new Point(this.p);
-        if (next.p.sub(p).length() < minLength) {
-            return new Point(next.p);
+        final double x = getX(), y = getY();
+        final double nx = next.getX(), ny = next.getY();
+        // walls to the neighbours are (almost) folded onto each other
+        double e1x = nx - x, e1y = ny - y;
+        double e2x = prev.getX() - x, e2y = prev.getY() - y;
+        double dot = Geometry.dot(e1x, e1y, e2x, e2y);
+        double len2 = (e1x * e1x + e1y * e1y) * (e2x * e2x + e2y * e2y);
+        if (dot > 0 && dot * dot >= COS_MIN_ANGLE * COS_MIN_ANGLE * len2)
+            return new Point(x, y);
+        if (Geometry.dist2(x, y, nx, ny) < minLength * minLength) {
+            return new Point(nx, ny);
         }
-        for (Polygon poly : polygon.drawingView.polygons) {
-            for (Vertex v : poly.vertices) {
-                if (v == this)
+        SegmentIndex index = polygon.drawingView.segmentIndex;
+        for (Vertex v : index.query(x, y, nx, ny, candidates)) {
+            if (v == this)
+                continue;
+            if (Geometry.intersection(x, y, nx, ny, v.getX(), v.getY(), v.next.getX(), v.next.getY(), false, tmp)) {
+                if (Maths.equals(tmp[0], x) && Maths.equals(tmp[1], y))
                     continue;
-                Point c = Maths.intersection(this.p, next.p, v.p, v.next.p, false);
-                if (c != null) {
-                    if (c.equals(this.p) || c.equals(next.p))
-                        continue;
-                    return c;
-                }
+                if (Maths.equals(tmp[0], nx) && Maths.equals(tmp[1], ny))
+                    continue;
+                return new Point(tmp[0], tmp[1]);
             }
         }
         return null;
     }
 
-    public void drawWindows(Canvas c) {
-        for (Window window : windows) {
-            window.draw(c);
+    /**
+     * Whether anything drawn for the wall starting at this vertex may be visible.
+     * Selection marks and directional lines are not bounded, so they always are.
+     */
+    public boolean isVisible(Viewport viewport) {
+        if (selected || prev.selected || next.selected || !directionalLines.isEmpty())
+            return true;
+        VertexStore store = polygon.store;
+        int i = index, j = next.index;
+        double l = Math.min(Math.min(store.x[i], store.x[j]), Math.min(store.bx[i], store.ax[j]));
+        double t = Math.min(Math.min(store.y[i], store.y[j]), Math.min(store.by[i], store.ay[j]));
+        double r = Math.max(Math.max(store.x[i], store.x[j]), Math.max(store.bx[i], store.ax[j]));
+        double b = Math.max(Math.max(store.y[i], store.y[j]), Math.max(store.by[i], store.ay[j]));
+        return viewport.intersects(l, t, r, b, DRAW_MARGIN);
+    }
+
+    public int getWindowCount() {
+        return windowList.size();
+    }
+
+    public Window getWindow(int i) {
+        return windowList.get(i);
+    }
+
+    /**
+     * Must be called after this wall has been moved, so that its windows are placed anew.
+     */
+    void invalidateWindows() {
+        for (int i = 0; i < windowList.size(); i++) {
+            windowList.get(i).invalidatePlacement();
+        }
+    }
+
+    public void drawWindows(Canvas c, RenderContext rc) {
+        for (int i = 0; i < windowList.size(); i++) {
+            windowList.get(i).draw(c, rc);
         }
     }
     public void addWindow(Window window) {
@@ -234,21 +302,34 @@ public class Vertex extends Selectable {
         Window left = windows.lower(window);
 
         double l = (left == null ? 0 : left.right);
-        double r = (right == null ? Maths.dist(p, next.p) : right.left);
+        double r = (right == null ? Maths.dist(getPoint(), next.getPoint()) : right.left);
         if (window.left >= l && window.right <= r) {
             windows.add(window);
+            windowList.clear();
+            windowList.addAll(windows);
         }
     }
 
     public void removeWindow(Window window) {
         window.setSelected(polygon.drawingView.selection, false);
         windows.remove(window);
+        windowList.clear();
+        windowList.addAll(windows);
     }
 
     @Override
     public void touchUp(Point point) {
-        if (!fixedOnEdge)
-            new MovementCorrector(this, directionalLines).snap();
+        if (drag != null)
+            drag.commit();
+        drag = null;
         super.touchUp(point);
     }
+
+    @Override
+    public void touchCancel() {
+        // the vertex stays where the gesture has left it and is not snapped
+        drag = null;
+        directionalLines.clear();
+        super.touchCancel();
+    }
 }
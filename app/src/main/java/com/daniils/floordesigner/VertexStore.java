@@ -0,0 +1,91 @@
+package com.daniils.floordesigner;
+
+/**
+ * Geometry of one polygon kept in flat primitive arrays.
+ * Vertex i is followed by vertex (i + 1) % size, the same order as Polygon.vertices.
+ * Vertex objects are views reading and writing these arrays by their index.
+ */
+public class VertexStore {
+    public final int size;
+    // vertex positions
+    public final double[] x, y;
+    // outline points: A lies on the outer line of the previous wall, B on the outer line of the next one
+    public final double[] ax, ay, bx, by;
+
+    public VertexStore(int size) {
+        this.size = size;
+        x = new double[size];
+        y = new double[size];
+        ax = new double[size];
+        ay = new double[size];
+        bx = new double[size];
+        by = new double[size];
+    }
+
+    public VertexStore(VertexStore other) {
+        size = other.size;
+        x = other.x.clone();
+        y = other.y.clone();
+        ax = other.ax.clone();
+        ay = other.ay.clone();
+        bx = other.bx.clone();
+        by = other.by.clone();
+    }
+
+    public int next(int i) {
+        return i + 1 == size ? 0 : i + 1;
+    }
+
+    public void translate(double dx, double dy) {
+        for (int i = 0; i < size; i++) {
+            x[i] += dx;
+            y[i] += dy;
+            ax[i] += dx;
+            ay[i] += dy;
+            bx[i] += dx;
+            by[i] += dy;
+        }
+    }
+
+    /**
+     * Scales vertex positions around (cx, cy). Outline must be recalculated afterwards.
+     */
+    public void scale(double cx, double cy, double k) {
+        for (int i = 0; i < size; i++) {
+            x[i] = cx + (x[i] - cx) * k;
+            y[i] = cy + (y[i] - cy) * k;
+        }
+    }
+
+    /**
+     * Rotates vertex positions and outline points around (cx, cy).
+     */
+    public void rotate(double cx, double cy, double alpha) {
+        double cos = Math.cos(alpha), sin = Math.sin(alpha);
+        rotate(x, y, cx, cy, cos, sin);
+        rotate(ax, ay, cx, cy, cos, sin);
+        rotate(bx, by, cx, cy, cos, sin);
+    }
+
+    private void rotate(double[] x, double[] y, double cx, double cy, double cos, double sin) {
+        for (int i = 0; i < size; i++) {
+            double rx = x[i] - cx, ry = y[i] - cy;
+            x[i] = cx + rx * cos - ry * sin;
+            y[i] = cy + rx * sin + ry * cos;
+        }
+    }
+
+    public double centroidX() {
+        double sum = 0;
+        for (int i = 0; i < size; i++)
+            sum += x[i];
+        return sum / size;
+    }
+
+    public double centroidY() {
+        double sum = 0;
+        for (int i = 0; i < size; i++)
+            sum += y[i];
+        return sum / size;
+    }
+}
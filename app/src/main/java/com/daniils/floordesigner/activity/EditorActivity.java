@@ -7,6 +7,7 @@ import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.Toast;
 
@@ -15,11 +16,15 @@ import com.daniils.floordesigner.R;
 import com.daniils.floordesigner.Selectable;
 import com.daniils.floordesigner.view.AssetsManager;
 import com.daniils.floordesigner.view.DrawingView;
+import com.daniils.floordesigner.view.RenderSurface;
 
 import java.io.IOException;
 
 public class EditorActivity extends AppCompatActivity {
     private DrawingView drawingView;
+    // holds the render surface, when it is on, under the drawing view
+    private FrameLayout drawingFrame;
+    private RenderSurface renderSurface = null;
     private String path;
     public AssetsManager assetsManager;
 
@@ -58,10 +63,14 @@ public class EditorActivity extends AppCompatActivity {
         });
 
         drawingView = new DrawingView(this, path);
-        drawingView.setLayoutParams(new LinearLayout.LayoutParams(
+        drawingFrame = new FrameLayout(this);
+        drawingFrame.setLayoutParams(new LinearLayout.LayoutParams(
                 LinearLayout.LayoutParams.MATCH_PARENT,
                 LinearLayout.LayoutParams.MATCH_PARENT));
-        content.addView(drawingView);
+        drawingFrame.addView(drawingView, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT,
+                FrameLayout.LayoutParams.MATCH_PARENT));
+        content.addView(drawingFrame);
     }
 
     @Override
@@ -89,6 +98,23 @@ public class EditorActivity extends AppCompatActivity {
         }
     }
 
+    public void onRenderThreadClick(View v) {
+        Button b = (Button)v;
+        if (renderSurface == null) {
+            renderSurface = new RenderSurface(this);
+            drawingFrame.addView(renderSurface, 0, new FrameLayout.LayoutParams(
+                    FrameLayout.LayoutParams.MATCH_PARENT,
+                    FrameLayout.LayoutParams.MATCH_PARENT));
+            drawingView.setRenderSurface(renderSurface);
+            b.setText(R.string.render_thread_off);
+        } else {
+            drawingView.setRenderSurface(null);
+            drawingFrame.removeView(renderSurface);
+            renderSurface = null;
+            b.setText(R.string.render_thread_on);
+        }
+    }
+
     public void onSaveButtonClick(View v) {
         try {
             drawingView.save(path);
@@ -106,13 +132,13 @@ public class EditorActivity extends AppCompatActivity {
     public void onZoomPlusClick(View v) {
         drawingView.scaleFactor /= 0.8;
         drawingView.invalidate();
-        drawingView.scaleFactor = Math.max(0.4, Math.min(drawingView.scaleFactor, 2.5));
+        drawingView.scaleFactor = Math.max(DrawingView.MIN_SCALE, Math.min(drawingView.scaleFactor, DrawingView.MAX_SCALE));
     }
 
     public void onZoomMinusClick(View v) {
         drawingView.scaleFactor *= 0.8;
         drawingView.invalidate();
-        drawingView.scaleFactor = Math.max(0.4, Math.min(drawingView.scaleFactor, 2.5));
+        drawingView.scaleFactor = Math.max(DrawingView.MIN_SCALE, Math.min(drawingView.scaleFactor, DrawingView.MAX_SCALE));
     }
 
     public void onPlaceSquareButtonClick(View view) {
@@ -0,0 +1,151 @@
+package com.daniils.floordesigner.util;
+
+/**
+ * Allocation-free 2D primitives built on dot and cross products.
+ * Unlike Maths they take raw coordinates, use no trigonometry
+ * and return points through caller-owned double[2] arrays.
+ */
+public class Geometry {
+
+    public static double dot(double ax, double ay, double bx, double by) {
+        return ax * bx + ay * by;
+    }
+
+    public static double cross(double ax, double ay, double bx, double by) {
+        return ax * by - ay * bx;
+    }
+
+    public static double dist(double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public static double dist2(double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Position of P along AB: 0 at A, 1 at B, not clamped.
+     */
+    public static double projectionParam(double ax, double ay, double bx, double by, double px, double py) {
+        double ex = bx - ax, ey = by - ay;
+        double len2 = ex * ex + ey * ey;
+        if (len2 == 0)
+            return 0;
+        return ((px - ax) * ex + (py - ay) * ey) / len2;
+    }
+
+    /**
+     * Coordinates of P in the frame of AB: out[0] is the distance from A along AB,
+     * out[1] is the signed distance from line AB (positive to the left of AB).
+     * Same as Maths.getRelativeCoords, except for the sign of out[1] and no rounding.
+     */
+    public static void relativeCoords(double ax, double ay, double bx, double by,
+                                      double px, double py, double[] out) {
+        double ex = bx - ax, ey = by - ay;
+        double len = Math.sqrt(ex * ex + ey * ey);
+        if (len == 0) {
+            out[0] = 0;
+            out[1] = dist(ax, ay, px, py);
+            return;
+        }
+        double qx = px - ax, qy = py - ay;
+        out[0] = (qx * ex + qy * ey) / len;
+        out[1] = (ex * qy - ey * qx) / len;
+    }
+
+    /**
+     * Projection of P onto the infinite line AB.
+     */
+    public static void projectToLine(double ax, double ay, double bx, double by,
+                                     double px, double py, double[] out) {
+        double t = projectionParam(ax, ay, bx, by, px, py);
+        out[0] = ax + (bx - ax) * t;
+        out[1] = ay + (by - ay) * t;
+    }
+
+    /**
+     * Distance from P to the infinite line AB.
+     */
+    public static double distToLine(double ax, double ay, double bx, double by, double px, double py) {
+        double ex = bx - ax, ey = by - ay;
+        double len = Math.sqrt(ex * ex + ey * ey);
+        if (len == 0)
+            return dist(ax, ay, px, py);
+        return Math.abs(ex * (py - ay) - ey * (px - ax)) / len;
+    }
+
+    /**
+     * Distance from P to the closest point of segment AB.
+     */
+    public static double distToSegment(double ax, double ay, double bx, double by, double px, double py) {
+        double t = Maths.clamp(projectionParam(ax, ay, bx, by, px, py), 0, 1);
+        return dist(ax + (bx - ax) * t, ay + (by - ay) * t, px, py);
+    }
+
+    /**
+     * Distance from P to the ray starting at A and going through B.
+     */
+    public static double distToRay(double ax, double ay, double bx, double by, double px, double py) {
+        double t = Math.max(projectionParam(ax, ay, bx, by, px, py), 0);
+        return dist(ax + (bx - ax) * t, ay + (by - ay) * t, px, py);
+    }
+
+    /**
+     * Distance between the closest points of segments AB and CD, 0 if they cross.
+     */
+    public static double segmentDist(double ax, double ay, double bx, double by,
+                                     double cx, double cy, double dx, double dy) {
+        double rx = bx - ax, ry = by - ay;
+        double sx = dx - cx, sy = dy - cy;
+        double qx = cx - ax, qy = cy - ay;
+        double denom = cross(rx, ry, sx, sy);
+        if (denom != 0) {
+            double t = cross(qx, qy, sx, sy) / denom;
+            double u = cross(qx, qy, rx, ry) / denom;
+            if (t >= 0 && t <= 1 && u >= 0 && u <= 1)
+                return 0;
+        }
+        return Math.min(Math.min(distToSegment(cx, cy, dx, dy, ax, ay), distToSegment(cx, cy, dx, dy, bx, by)),
+                Math.min(distToSegment(ax, ay, bx, by, cx, cy), distToSegment(ax, ay, bx, by, dx, dy)));
+    }
+
+    /**
+     * Signed distance between segments AB and CD: segmentDist if they don't cross, otherwise
+     * minus how far the end closest to the other segment's line has to move to undo the crossing.
+     */
+    public static double segmentSeparation(double ax, double ay, double bx, double by,
+                                           double cx, double cy, double dx, double dy) {
+        double dist = segmentDist(ax, ay, bx, by, cx, cy, dx, dy);
+        if (dist > 0)
+            return dist;
+        return -Math.min(Math.min(distToLine(cx, cy, dx, dy, ax, ay), distToLine(cx, cy, dx, dy, bx, by)),
+                Math.min(distToLine(ax, ay, bx, by, cx, cy), distToLine(ax, ay, bx, by, dx, dy)));
+    }
+
+    /**
+     * Intersection of AB and CD, written into out.
+     * @param infinite whether AB and CD are lines rather than segments
+     * @return false if they are parallel or, for segments, do not cross
+     */
+    public static boolean intersection(double ax, double ay, double bx, double by,
+                                       double cx, double cy, double dx, double dy,
+                                       boolean infinite, double[] out) {
+        double rx = bx - ax, ry = by - ay;
+        double sx = dx - cx, sy = dy - cy;
+        double denom = rx * sy - ry * sx;
+        if (denom == 0)
+            return false;
+        double qx = cx - ax, qy = cy - ay;
+        double t = (qx * sy - qy * sx) / denom;
+        if (!infinite) {
+            double u = (qx * ry - qy * rx) / denom;
+            if (t < -Maths.E || t > 1 + Maths.E || u < -Maths.E || u > 1 + Maths.E)
+                return false;
+        }
+        out[0] = ax + rx * t;
+        out[1] = ay + ry * t;
+        return true;
+    }
+}
@@ -165,20 +165,13 @@ public class Maths {
     }
 
     public static Point calculateSegmentOffset(Point A, Point B, Point to) {
-        double dist = dist(A, B, to);
-        double len = dist(A, B);
-        double x = (B.x - A.x) / len * dist;
-        double y = (B.y - A.y) / len * dist;
-        Point o1 = new Point(-y, x);
-        Point o2 = new Point(y, -x);
-        Point p1 = new Point(A.x + o1.x, A.y + o1.y);
-        Point p2 = new Point(A.x + o2.x, A.y + o2.y);
-        double d1 = dist(p1, to);
-        double d2 = dist(p2, to);
-        if (d1 < d2)
-            return o1;
-        else
-            return o2;
+        double ex = B.x - A.x, ey = B.y - A.y;
+        double len2 = ex * ex + ey * ey;
+        if (len2 == 0)
+            return new Point(0, 0);
+        // shift perpendicular to AB by the signed distance of the target from AB
+        double k = Geometry.cross(ex, ey, to.x - A.x, to.y - A.y) / len2;
+        return new Point(-ey * k, ex * k);
     }
 
     public static Point getRotatedPoint(double angle, double len) {
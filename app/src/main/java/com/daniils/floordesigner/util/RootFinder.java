@@ -0,0 +1,85 @@
+package com.daniils.floordesigner.util;
+
+/**
+ * Primitive replacement for Binsearch: no boxing of the probed value
+ * and a hard limit on the number of probes.
+ */
+public class RootFinder {
+    public static final int DEFAULT_BUDGET = 16;
+
+    @FunctionalInterface
+    public interface Predicate {
+        boolean test(double x);
+    }
+
+    @FunctionalInterface
+    public interface Function {
+        double value(double x);
+    }
+
+    /**
+     * Bracketing search for the border of a predicate which holds at min and fails at max.
+     * Stops when the bracket is narrower than eps or the budget is spent.
+     * @return the largest probed x at which the predicate held (min if none)
+     */
+    public static double lastTrue(double min, double max, double eps, int budget, Predicate predicate) {
+        while (max - min > eps && budget-- > 0) {
+            double x = min + (max - min) / 2;
+            if (predicate.test(x)) {
+                min = x;
+            } else {
+                max = x;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Illinois variant of regula falsi for a continuous function with
+     * f(min) and f(max) of different signs. Converges superlinearly,
+     * unlike bisection, and unlike plain regula falsi does not stall on one side.
+     * @return the end of the final bracket lying on the side of min,
+     * or max if the function does not change its sign
+     */
+    public static double illinois(double min, double max, double eps, int budget, Function function) {
+        return illinois(min, max, function.value(min), function.value(max), eps, budget, function);
+    }
+
+    /**
+     * Same as above for a caller who already knows the values at the ends of the range.
+     */
+    public static double illinois(double min, double max, double fMin, double fMax,
+                                  double eps, int budget, Function function) {
+        double a = min, b = max;
+        double fa = fMin, fb = fMax;
+        if (fa == 0)
+            return a;
+        if (fa * fb > 0)
+            return b; // no sign change, the whole range is on the side of min
+        int side = 0;
+        while (Math.abs(b - a) > eps && budget-- > 0) {
+            double x = (a * fb - b * fa) / (fb - fa);
+            if (Double.isNaN(x) || x <= Math.min(a, b) || x >= Math.max(a, b))
+                x = a + (b - a) / 2;
+            double fx = function.value(x);
+            if (fx == 0)
+                return x;
+            if (fx * fb < 0) {
+                // root is between x and b, x replaces a
+                a = x;
+                fa = fx;
+                if (side == -1)
+                    fb /= 2;
+                side = -1;
+            } else {
+                // root is between a and x, x replaces b
+                b = x;
+                fb = fx;
+                if (side == 1)
+                    fa /= 2;
+                side = 1;
+            }
+        }
+        return a;
+    }
+}
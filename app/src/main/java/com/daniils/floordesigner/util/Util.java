@@ -6,11 +6,10 @@ import android.graphics.Paint;
 import android.graphics.Typeface;
 
 import com.daniils.floordesigner.Point;
-import com.daniils.floordesigner.Polygon;
 import com.daniils.floordesigner.Vertex;
+import com.daniils.floordesigner.view.DrawingView;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 
 public class Util {
     public static ArrayList<Point> createRoundPath(int n, double radius, Point center) {
@@ -39,27 +38,20 @@ public class Util {
     }
 
     public static void drawMultiline(Canvas g, Paint paint, Point center, String text) {
+        drawMultiline(g, paint, center.x, center.y, text);
+    }
+
+    public static void drawMultiline(Canvas g, Paint paint, double centerX, double centerY, String text) {
         String[] lines = text.split("\n");
-        int y = (int)center.y - (int)(lines.length * paint.getTextSize()) / 2;
+        int y = (int)centerY - (int)(lines.length * paint.getTextSize()) / 2;
         for (String s : lines) {
-            int x = (int)center.x - (int)paint.measureText(s) / 2;
+            int x = (int)centerX - (int)paint.measureText(s) / 2;
             g.drawText(s, x, y, paint);
             y += paint.getTextSize();
         }
     }
 
-    public static Vertex getClosestSegment(LinkedList<Polygon> polygons, Point point, double minDist) {
-        Vertex out = null;
-        for (Polygon poly : polygons) {
-            for (Vertex v : poly.vertices) {
-                Point p = Maths.getRelativeCoords(v.p, v.next.p, point);
-                double maxX = v.next.p.sub(v.p).length();
-                if (p.x > 0 && p.x < maxX && Math.abs(p.y) <= minDist) {
-                    minDist = Math.abs(p.y);
-                    out = v;
-                }
-            }
-        }
-        return out;
+    public static Vertex getClosestSegment(DrawingView drawingView, Point point, double minDist) {
+        return drawingView.picker.nearestSegment(point.x, point.y, minDist);
     }
 }
@@ -0,0 +1,41 @@
+package com.daniils.floordesigner.view;
+
+/**
+ * Decides what is worth drawing at the current zoom.
+ * Thresholds are in screen pixels, or in scaleFactor for the zoom ones.
+ * They are read while drawing, so rooms of the static layer pick up
+ * a change only when the layer is rebuilt.
+ */
+public class DetailLevel {
+    // walls shorter than this on the screen get no measurement
+    public double minMeasuredWallPixels = 80;
+    // below this zoom no text is drawn at all; zoom thresholds lie between
+    // DrawingView.MIN_SCALE and MAX_SCALE, otherwise their tier is never seen
+    public double minTextScale = 0.5;
+    // below this zoom angle arcs and their values are skipped
+    public double minAngleScale = 0.65;
+    // windows and doors shorter than this on the screen are drawn as a single stroke
+    public double minDetailedElementPixels = 40;
+
+    private double scaleFactor = 1;
+
+    void update(double scaleFactor) {
+        this.scaleFactor = scaleFactor;
+    }
+
+    public boolean showText() {
+        return scaleFactor >= minTextScale;
+    }
+
+    public boolean showMeasurement(double wallLength) {
+        return showText() && wallLength * scaleFactor >= minMeasuredWallPixels;
+    }
+
+    public boolean showAngles() {
+        return showText() && scaleFactor >= minAngleScale;
+    }
+
+    public boolean showElementDetails(double elementLength) {
+        return elementLength * scaleFactor >= minDetailedElementPixels;
+    }
+}
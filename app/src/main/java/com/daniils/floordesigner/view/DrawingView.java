@@ -6,20 +6,23 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 
+import com.daniils.floordesigner.BroadPhase;
 import com.daniils.floordesigner.BuildingHelper;
 import com.daniils.floordesigner.LengthFrame;
 import com.daniils.floordesigner.MovementFilter;
 import com.daniils.floordesigner.Shapes;
 import com.daniils.floordesigner.WallElements;
 import com.daniils.floordesigner.data.WindowData;
-import com.daniils.floordesigner.util.Maths;
+import com.daniils.floordesigner.Picker;
 import com.daniils.floordesigner.Point;
 import com.daniils.floordesigner.Polygon;
 import com.daniils.floordesigner.R;
+import com.daniils.floordesigner.SegmentIndex;
 import com.daniils.floordesigner.Selectable;
 import com.daniils.floordesigner.Vertex;
 import com.daniils.floordesigner.util.Util;
@@ -44,12 +47,19 @@ public class DrawingView extends View {
     public static final double VERTEX_BUTTON_RADIUS = 50;
     public static final double SEGM_BUTTON_RADIUS = 30;
     public static final double DRAG_MOVEMENT_STEP = 50;
+    public static final double MIN_SCALE = 0.4, MAX_SCALE = 2.5;
 
     private State state = State.DEFAULT;
     private LinkedList<Point> path = new LinkedList<>();
     public ArrayList<Selectable> selection = new ArrayList<>();
-    public LinkedList<Polygon> polygons = new LinkedList<>();
+    public ArrayList<Polygon> polygons = new ArrayList<>();
     public LinkedList<Polygon> polygonsToRemove = new LinkedList<>();
+    public final SegmentIndex segmentIndex = new SegmentIndex();
+    public final BroadPhase broadPhase = new BroadPhase();
+    public final Picker picker = new Picker(this);
+    public final Viewport viewport = new Viewport();
+    public final DetailLevel detailLevel = new DetailLevel();
+    private final RenderContext renderContext = new RenderContext(viewport, detailLevel);
     private Point translation = new Point(0, 0);
     public double scaleFactor = 0.8f;
     private Point touchStart = new Point(0, 0);
@@ -58,9 +68,63 @@ public class DrawingView extends View {
     int shapeIndex = 0;
     int windowIndex = 0;
     MovementFilter filter = new MovementFilter(10);
+    private final RoomLayer roomLayer = new RoomLayer();
+    // rooms split by whether something of them is selected
+    private final ArrayList<Polygon> staticRooms = new ArrayList<>();
+    private final ArrayList<Polygon> editedRooms = new ArrayList<>();
+    private final ArrayList<Polygon> visibleRooms = new ArrayList<>();
+    private final ArrayList<Polygon> visibleWalls = new ArrayList<>();
+    // edited rooms and static ones close to them, drawn over the layer; see collectLiveRooms
+    private final ArrayList<Polygon> liveRooms = new ArrayList<>();
+    private final ArrayList<Polygon> nearRooms = new ArrayList<>();
+    private final ArrayList<Polygon> queriedRooms = new ArrayList<>();
+    // if set, the plan is drawn by the surface's render thread and this view draws only the selection
+    private RenderSurface renderSurface = null;
+    // pan or pinch zoom in progress, drawn from the snapshot
+    private boolean navigating = false;
+    private boolean pinching = false;
+    private float lastFocusX, lastFocusY;
+    private final NavigationSnapshot snapshot = new NavigationSnapshot();
+    private final ScaleGestureDetector scaleDetector;
+    // latest drag target in world coordinates, solved once per display frame
+    private Point pendingMove = null;
+    private final Choreographer.FrameCallback moveCallback = frameTimeNanos -> {
+        Point target = pendingMove;
+        pendingMove = null;
+        if (target != null)
+            moveSelection(target);
+    };
 
     public DrawingView(Context context, String filename) {
         super(context);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                if (state != State.DEFAULT)
+                    return false;
+                // the first finger no longer drags what it has touched
+                flushMove();
+                Point c = toWorld(detector.getFocusX(), detector.getFocusY());
+                for (Selectable s : selection)
+                    s.touchUp(new Point(c));
+                pinching = true;
+                lastFocusX = detector.getFocusX();
+                lastFocusY = detector.getFocusY();
+                beginNavigation();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                translation = new Point(translation.x + detector.getFocusX() - lastFocusX,
+                        translation.y + detector.getFocusY() - lastFocusY);
+                lastFocusX = detector.getFocusX();
+                lastFocusY = detector.getFocusY();
+                invalidate();
+                return true;
+            }
+        });
         try {
             load(filename);
         } catch (IOException e) {
@@ -73,6 +137,16 @@ public class DrawingView extends View {
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        if (pinching) {
+            // the rest of the gesture belongs to the pinch, even after one finger is lifted
+            int action = event.getActionMasked();
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                pinching = false;
+                endNavigation();
+            }
+            return true;
+        }
         boolean out = false;
         switch (state) {
             case DRAWING:
@@ -110,10 +184,11 @@ public class DrawingView extends View {
                     Point p = new Point(x, y);
                     Class<?> aClass = WallElements.wallElements[windowIndex].aClass;
                     Constructor<?> constructor = aClass.getConstructor(Point.class, Vertex.class);
-                    Vertex v = Util.getClosestSegment(polygons, p, 90);
+                    Vertex v = Util.getClosestSegment(this, p, 90);
                     if (v != null) {
                         Window window = (Window) constructor.newInstance(p, v);
                         v.addWindow(window);
+                        roomLayer.invalidate(v.polygon);
                     }
                 } catch (NoSuchMethodException e) {
                     e.printStackTrace();
@@ -153,7 +228,7 @@ public class DrawingView extends View {
                     pts.add(new Point(x0 + p.x * w, y0 + p.y * h));
                 }
                 Polygon poly = new Polygon(this, pts);
-                polygons.add(poly);
+                addPolygon(poly);
                 placedSquare = null;
                 setPlacingShape(false);
                 updateLengthFrame();
@@ -193,7 +268,7 @@ public class DrawingView extends View {
                 if (pts != null) {
                     Polygon poly = new Polygon(this, pts);
                     if (poly.getIntersection() == null) {
-                        polygons.add(poly);
+                        addPolygon(poly);
                     }
                 }
                 path.clear();
@@ -217,6 +292,8 @@ public class DrawingView extends View {
         // c - touch in world coords
         Point c = new Point(x, y);
 
+        if (event.getAction() != MotionEvent.ACTION_MOVE)
+            flushMove();
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
                 // Transmit action to selectables
@@ -233,32 +310,13 @@ public class DrawingView extends View {
 
                 // Select best point & best segment
                 Point p = new Point(x, y);
-                double dist2PointMin = VERTEX_BUTTON_RADIUS / scaleFactor;
-                double dist2SegmMin = SEGM_BUTTON_RADIUS / scaleFactor;
-                Vertex bestPoint = null;
+                Vertex bestPoint = picker.nearestVertex(x, y, VERTEX_BUTTON_RADIUS / scaleFactor);
                 Vertex bestSegm = null;
                 Polygon bestPoly = null;
-                for (Polygon poly : polygons) {
-                    if (bestPoint == null && bestSegm == null && bestPoly == null) {
-                        if (poly.contains(p)) {
-                            bestPoly = poly;
-                        }
-                    }
-                    for (Vertex v : poly.vertices) {
-                        double dist2Point = Maths.dist(v.p, p);
-                        if (dist2Point < dist2PointMin) {
-                            dist2PointMin = dist2Point;
-                            bestPoint = v;
-                        }
-                        Point rel = Maths.getRelativeCoords(v.p, v.next.p, p);
-                        boolean overlaps = (rel.x >= 0 && rel.x <= Maths.dist(v.p, v.next.p));
-                        double dist2Segm = Math.abs(rel.y);
-                        if (dist2Segm < dist2SegmMin && overlaps) {
-                            dist2SegmMin = dist2Segm;
-                            bestSegm = v;
-                        }
-                    }
-                }
+                if (bestPoint == null)
+                    bestSegm = picker.nearestSegment(x, y, SEGM_BUTTON_RADIUS / scaleFactor);
+                if (bestPoint == null && bestSegm == null)
+                    bestPoly = picker.roomAt(x, y);
 
                 // Choice priority: 1) point 2)segment 3)polygon 4)total deselection
                 if (bestPoint != null) {
@@ -270,9 +328,10 @@ public class DrawingView extends View {
                     if (bestSegm.selected) break;
                     if (!bestSegm.trySelectWindow(selection, p)) {
                         clearSelection();
+                        // both ends are selected before the drag of the wall starts
                         bestSegm.setSelected(selection, true);
-                        bestSegm.touchDown(c);
                         bestSegm.next.setSelected(null, true);
+                        bestSegm.touchDown(c);
                         bestSegm.next.touchDown(c);
                     }
                     bestSegm.polygon.showMenu();
@@ -289,19 +348,19 @@ public class DrawingView extends View {
                 break;
 
             case MotionEvent.ACTION_MOVE:
-                // Transmit action to selectables, dozing distance step by step
-                for (Selectable v : selection) {
-                    v.touchMove(c);
-                }
                 // Update translation
                 if (selection.isEmpty()) {
                     p = new Point(t.x, t.y);
                     translation = translation.add(p.sub(touchStart));
                     touchStart = new Point(p);
+                    beginNavigation();
+                    invalidate();
+                } else {
+                    // Samples arriving faster than frames only move the target of the next solve
+                    if (pendingMove == null)
+                        Choreographer.getInstance().postFrameCallback(moveCallback);
+                    pendingMove = c;
                 }
-
-                updateLengthFrame();
-                invalidate();
                 break;
 
             case MotionEvent.ACTION_UP:
@@ -309,53 +368,261 @@ public class DrawingView extends View {
                 for (Selectable v : selection)
                     v.touchUp(new Point(c));
 
+                endNavigation();
                 updateLengthFrame();
                 invalidate();
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+                for (Selectable v : selection)
+                    v.touchCancel();
+
+                endNavigation();
+                invalidate();
         }
         return true;
     }
 
+    private void moveSelection(Point target) {
+        // Transmit action to selectables, dozing distance step by step
+        for (Selectable v : selection) {
+            v.touchMove(target);
+        }
+        updateLengthFrame();
+        invalidate();
+    }
+
+    /**
+     * Solves the drag target still waiting for a frame right away,
+     * so that it is not applied after a later touch event.
+     */
+    private void flushMove() {
+        if (pendingMove == null)
+            return;
+        Choreographer.getInstance().removeFrameCallback(moveCallback);
+        Point target = pendingMove;
+        pendingMove = null;
+        moveSelection(target);
+    }
+
+    private Point toWorld(double screenX, double screenY) {
+        return new Point((screenX - translation.x) / scaleFactor, (screenY - translation.y) / scaleFactor);
+    }
+
+    /**
+     * Scales the view by factor keeping the screen point (focusX, focusY) in place.
+     */
+    public void zoom(double factor, double focusX, double focusY) {
+        double scale = Math.max(MIN_SCALE, Math.min(scaleFactor * factor, MAX_SCALE));
+        translation = new Point(focusX - (focusX - translation.x) * scale / scaleFactor,
+                focusY - (focusY - translation.y) * scale / scaleFactor);
+        scaleFactor = scale;
+    }
+
+    /**
+     * From now on frames only transform the last full frame, until endNavigation.
+     */
+    private void beginNavigation() {
+        if (navigating)
+            return;
+        navigating = true;
+        // the render thread draws frames off the UI thread anyway
+        if (renderSurface == null)
+            snapshot.capture(this, translation.x, translation.y, scaleFactor);
+    }
+
+    private void endNavigation() {
+        if (!navigating)
+            return;
+        navigating = false;
+        invalidate();
+    }
+
+    /**
+     * Draws the plan through the surface, which has to lie under this view, from now on,
+     * or by this view itself again if surface is null.
+     */
+    public void setRenderSurface(RenderSurface renderSurface) {
+        this.renderSurface = renderSurface;
+        // rooms may have changed in ways the layer doesn't track while it was not drawn
+        roomLayer.invalidate();
+        invalidate();
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        Paint mPaint = Util.getPaint(Color.WHITE);
-        mPaint.setStyle(Paint.Style.FILL);
-        canvas.drawRect(0, 0, getWidth(), getHeight(), mPaint);
+        if (renderSurface == null)
+            drawFrame(canvas);
+        else
+            drawOverlay(canvas);
+    }
+
+    void drawFrame(Canvas canvas) {
+        if (navigating && snapshot.draw(canvas, renderContext.background,
+                translation.x, translation.y, scaleFactor))
+            return;
+        canvas.drawRect(0, 0, getWidth(), getHeight(), renderContext.background);
+
+        prepareFrame();
+        boolean layered = roomLayer.draw(canvas, this, staticRooms,
+                translation.x, translation.y, scaleFactor);
 
         canvas.translate((float) translation.x, (float) translation.y);
         canvas.scale((float)scaleFactor, (float)scaleFactor);
-        for (Polygon poly : polygonsToRemove) {
-            polygons.remove(poly);
+        if (layered) {
+            collectLiveRooms();
+            drawPolygons(canvas, editedRooms, liveRooms);
+        } else {
+            drawPolygons(canvas, polygons, polygons);
         }
-        polygonsToRemove.clear();
-        drawPolygons(canvas);
-        lengthFrame.draw(canvas);
+        lengthFrame.draw(canvas, renderContext);
         drawPenLine(canvas);
         drawPlacedRect(canvas);
     }
 
-    private void drawPolygons(Canvas canvas) {
-        Paint paint = Util.getPaint(Color.BLACK);
+    /**
+     * Publishes a copy of the visible rooms to the render surface and draws over it,
+     * on a transparent background, only what the selection adds to the plan.
+     */
+    private void drawOverlay(Canvas canvas) {
+        prepareFrame();
+        collectVisible(polygons, visibleRooms);
+        renderSurface.publish(PlanSnapshot.capture(visibleRooms, editedRooms,
+                translation.x, translation.y, scaleFactor, detailLevel.showText(), renderContext.coords));
+
+        canvas.translate((float) translation.x, (float) translation.y);
+        canvas.scale((float)scaleFactor, (float)scaleFactor);
+        RenderContext rc = renderContext;
+        rc.reset(rc.paint, Color.BLACK);
+        for (int i = 0; i < editedRooms.size(); i++) {
+            editedRooms.get(i).drawInfo(canvas, rc);
+        }
+        for (int i = 0; i < editedRooms.size(); i++) {
+            editedRooms.get(i).drawUI(canvas, rc);
+        }
+        lengthFrame.draw(canvas, renderContext);
+        drawPenLine(canvas);
+        drawPlacedRect(canvas);
+    }
+
+    private void prepareFrame() {
+        if (!polygonsToRemove.isEmpty()) {
+            for (Polygon poly : polygonsToRemove) {
+                polygons.remove(poly);
+                segmentIndex.remove(poly);
+                broadPhase.remove(poly);
+            }
+            polygonsToRemove.clear();
+        }
+        viewport.set(translation.x, translation.y, scaleFactor, getWidth(), getHeight());
+        detailLevel.update(scaleFactor);
+        splitRooms();
+    }
+
+    private void splitRooms() {
+        editedRooms.clear();
+        for (int i = 0; i < selection.size(); i++) {
+            Selectable s = selection.get(i);
+            Polygon poly = null;
+            if (s instanceof Polygon)
+                poly = (Polygon) s;
+            if (s instanceof Vertex)
+                poly = ((Vertex) s).polygon;
+            if (s instanceof Window && ((Window) s).v != null)
+                poly = ((Window) s).v.polygon;
+            if (poly != null && !editedRooms.contains(poly))
+                editedRooms.add(poly);
+        }
+        staticRooms.clear();
+        for (int i = 0; i < polygons.size(); i++) {
+            Polygon poly = polygons.get(i);
+            if (!editedRooms.contains(poly))
+                staticRooms.add(poly);
+        }
+    }
+
+    /**
+     * Static rooms the walls of the edited ones may be drawn over, together with the edited rooms,
+     * in the order of polygons. The layer has drawn the floors of the static rooms before
+     * the edited walls are drawn on top of it, so these floors are drawn once more after them,
+     * as if every room were drawn pass by pass.
+     */
+    private void collectLiveRooms() {
+        // outline points lie at most 2 * THICKNESS away from the vertices
+        final double margin = 2 * Vertex.THICKNESS;
+        nearRooms.clear();
+        for (int i = 0; i < editedRooms.size(); i++) {
+            Polygon edited = editedRooms.get(i);
+            broadPhase.query(edited.getLeft() - margin, edited.getTop() - margin,
+                    edited.getRight() + margin, edited.getBottom() + margin, queriedRooms);
+            for (int j = 0; j < queriedRooms.size(); j++) {
+                if (!nearRooms.contains(queriedRooms.get(j)))
+                    nearRooms.add(queriedRooms.get(j));
+            }
+        }
+        liveRooms.clear();
+        for (int i = 0; i < polygons.size(); i++) {
+            Polygon poly = polygons.get(i);
+            if (editedRooms.contains(poly) || nearRooms.contains(poly))
+                liveRooms.add(poly);
+        }
+    }
+
+    void drawPolygons(Canvas canvas, ArrayList<Polygon> rooms) {
+        drawPolygons(canvas, rooms, rooms);
+    }
+
+    /**
+     * Draws every pass over all rooms before the next one; walls are drawn only for the walled rooms.
+     */
+    private void drawPolygons(Canvas canvas, ArrayList<Polygon> walled, ArrayList<Polygon> rooms) {
+        RenderContext rc = renderContext;
+        rc.reset(rc.paint, Color.BLACK);
+        // Skip rooms out of the screen, except edited ones: their directional lines are unbounded
+        collectVisible(walled, visibleWalls);
+        collectVisible(rooms, visibleRooms);
         // Draw outer
-        for (Polygon poly : polygons) {
-            poly.drawOuterLine(canvas, paint);
+        for (int i = 0; i < visibleWalls.size(); i++) {
+            visibleWalls.get(i).drawOuterLine(canvas, rc);
         }
         // Draw inner
-        for (Polygon poly : polygons) {
-            poly.drawInnerLine(canvas, paint);
+        for (int i = 0; i < visibleRooms.size(); i++) {
+            visibleRooms.get(i).drawInnerLine(canvas, rc);
         }
         // Draw info
-        for (Polygon poly : polygons) {
-            poly.drawInfo(canvas, paint);
+        for (int i = 0; i < visibleRooms.size(); i++) {
+            visibleRooms.get(i).drawInfo(canvas, rc);
         }
         // Draw UI
-        for (Polygon poly : polygons) {
-            poly.drawUI(canvas, paint);
+        for (int i = 0; i < visibleRooms.size(); i++) {
+            visibleRooms.get(i).drawUI(canvas, rc);
+        }
+    }
+
+    private void collectVisible(ArrayList<Polygon> rooms, ArrayList<Polygon> out) {
+        out.clear();
+        for (int i = 0; i < rooms.size(); i++) {
+            Polygon poly = rooms.get(i);
+            if (editedRooms.contains(poly) || poly.isVisible(viewport))
+                out.add(poly);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (pendingMove != null) {
+            Choreographer.getInstance().removeFrameCallback(moveCallback);
+            pendingMove = null;
         }
+        roomLayer.release();
+        snapshot.release();
+        renderContext.symbols.clear();
     }
 
     private void drawPenLine(Canvas canvas) {
-        Paint mPaint = Util.getPaint(Color.BLACK);
+        Paint mPaint = renderContext.penPaint;
         if (path.size() > 1) {
             Iterator<Point> it = path.iterator();
             Point a = it.next();
@@ -368,17 +635,22 @@ public class DrawingView extends View {
     }
 
     private void drawPlacedRect(Canvas canvas) {
-        Paint mPaint = Util.getPaint(Color.RED);
+        Paint mPaint = renderContext.placedShapePaint;
         if (placedSquare != null) {
-            Rect rect = new Rect(
+            canvas.drawRect(
                     (int)Math.min(placedSquare[0].x, placedSquare[1].x),
                     (int)Math.min(placedSquare[0].y, placedSquare[1].y),
                     (int)Math.max(placedSquare[0].x, placedSquare[1].x),
-                    (int)Math.max(placedSquare[0].y, placedSquare[1].y));
-            canvas.drawRect(rect, mPaint);
+                    (int)Math.max(placedSquare[0].y, placedSquare[1].y), mPaint);
         }
     }
 
+    public void addPolygon(Polygon poly) {
+        polygons.add(poly);
+        segmentIndex.add(poly);
+        broadPhase.add(poly);
+    }
+
     public void setDrawing(boolean drawing) {
         this.state = (drawing ? State.DRAWING : State.DEFAULT);
     }
@@ -402,7 +674,7 @@ public class DrawingView extends View {
         LinkedList<PolygonData> data = (LinkedList<PolygonData>)in.readObject();
         for (PolygonData polygonData : data) {
             Polygon poly = new Polygon(this, polygonData);
-            polygons.add(poly);
+            addPolygon(poly);
             int vertexId = 0;
             Iterator<Vertex> it = poly.vertices.iterator();
             Vertex vertex = it.next();
@@ -0,0 +1,91 @@
+package com.daniils.floordesigner.view;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import com.daniils.floordesigner.util.Util;
+
+/**
+ * Text of a value shown on the plan together with its measured width.
+ * The string is formatted and measured again only when the rounded value,
+ * the caption or the text size changes, so a label that stays the same costs nothing per frame.
+ */
+public class Label {
+    // value is printed as a whole number, without ".0"
+    public static final int WHOLE = -1;
+
+    private final int digits;
+    private final String unit;
+
+    private double value = Double.NaN;
+    private String caption = null;
+    private float textSize = -1;
+
+    private String text = "";
+    private float width = 0;
+    private String[] captionLines = new String[0];
+    private float[] captionWidths = new float[0];
+
+    /**
+     * @param digits digits after the point, or WHOLE
+     * @param unit appended to the value
+     */
+    public Label(int digits, String unit) {
+        this.digits = digits;
+        this.unit = unit;
+    }
+
+    public Label update(double value, Paint paint) {
+        return update(value, null, paint);
+    }
+
+    /**
+     * Brings the text up to date with the value, measuring it with the paint's text size.
+     * @param caption lines drawn under the value, or null
+     */
+    public Label update(double value, String caption, Paint paint) {
+        double rounded = digits == WHOLE ? Math.floor(value + 0.5) : Util.setPrecision(value, digits);
+        float size = paint.getTextSize();
+        if (rounded != this.value || size != textSize) {
+            text = (digits == WHOLE ? Long.toString((long) rounded) : Double.toString(rounded)) + unit;
+            width = paint.measureText(text);
+            this.value = rounded;
+        }
+        if (caption == null ? this.caption != null : size != textSize || !caption.equals(this.caption)) {
+            captionLines = caption == null || caption.isEmpty() ? new String[0] : caption.split("\n");
+            captionWidths = new float[captionLines.length];
+            for (int i = 0; i < captionLines.length; i++)
+                captionWidths[i] = paint.measureText(captionLines[i]);
+            this.caption = caption;
+        }
+        textSize = size;
+        return this;
+    }
+
+    /**
+     * Value as it is shown, after rounding.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    /**
+     * Draws the value and the caption under it, centered on (centerX, centerY) like Util.drawMultiline.
+     */
+    public void drawCentered(Canvas g, Paint paint, double centerX, double centerY) {
+        int y = (int)centerY - (int)((1 + captionLines.length) * paint.getTextSize()) / 2;
+        g.drawText(text, (int)centerX - (int)width / 2, y, paint);
+        for (int i = 0; i < captionLines.length; i++) {
+            y += paint.getTextSize();
+            g.drawText(captionLines[i], (int)centerX - (int)captionWidths[i] / 2, y, paint);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.daniils.floordesigner.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+ * Full frame captured when the user starts to pan or zoom.
+ * While the gesture goes on, the frame is only moved and scaled to follow the view transform,
+ * so a frame costs a single bitmap draw however large the plan is.
+ * The plan is drawn at full quality again once the gesture is over.
+ */
+class NavigationSnapshot {
+    private Bitmap bitmap = null;
+    private Canvas canvas = null;
+    private boolean valid = false;
+    // view transform the bitmap was drawn with
+    private double translationX, translationY, scaleFactor;
+    private final Matrix matrix = new Matrix();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    void capture(DrawingView view, double translationX, double translationY, double scaleFactor) {
+        int width = view.getWidth(), height = view.getHeight();
+        valid = false;
+        if (width <= 0 || height <= 0)
+            return;
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            if (bitmap != null)
+                bitmap.recycle();
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+        }
+        int count = canvas.save();
+        view.drawFrame(canvas);
+        canvas.restoreToCount(count);
+        this.translationX = translationX;
+        this.translationY = translationY;
+        this.scaleFactor = scaleFactor;
+        valid = true;
+    }
+
+    /**
+     * Draws the captured frame as it would look with the given view transform.
+     * @return false if nothing has been captured
+     */
+    boolean draw(Canvas target, Paint background, double translationX, double translationY, double scaleFactor) {
+        if (!valid)
+            return false;
+        // screen point of the capture -> world -> screen point now
+        float k = (float) (scaleFactor / this.scaleFactor);
+        matrix.setTranslate((float) -this.translationX, (float) -this.translationY);
+        matrix.postScale(k, k);
+        matrix.postTranslate((float) translationX, (float) translationY);
+        // parts of the plan out of the capture stay empty until the gesture is over
+        target.drawRect(0, 0, bitmap.getWidth(), bitmap.getHeight(), background);
+        target.drawBitmap(bitmap, matrix, paint);
+        return true;
+    }
+
+    void release() {
+        if (bitmap != null)
+            bitmap.recycle();
+        bitmap = null;
+        canvas = null;
+        valid = false;
+    }
+}
@@ -0,0 +1,79 @@
+package com.daniils.floordesigner.view;
+
+import com.daniils.floordesigner.Polygon;
+import com.daniils.floordesigner.Vertex;
+import com.daniils.floordesigner.VertexStore;
+
+import java.util.ArrayList;
+
+/**
+ * Everything RenderSurface needs to draw one frame of the plan: copies of the rooms' geometry
+ * and the view transform. A snapshot refers to nothing the UI thread changes afterwards,
+ * so it can be drawn from another thread while the rooms are being edited.
+ */
+final class PlanSnapshot {
+    final double translationX, translationY, scaleFactor;
+    // whether room labels are drawn at this zoom, see DetailLevel.showText
+    final boolean showText;
+    final Room[] rooms;
+
+    static final class Room {
+        final VertexStore store;
+        // both ends of every window, 4 values each in the order of Window.getAbsoluteCoordinates
+        final double[] windows;
+        final double square;
+        final String label;
+        final float labelSize;
+        // labels of edited rooms are drawn by DrawingView, with the rest of the selection
+        final boolean labelled;
+
+        private Room(Polygon poly, boolean labelled, double[] coords) {
+            store = poly.copyStore();
+            int count = 0;
+            Vertex v = poly.firstVertex;
+            do {
+                count += v.getWindowCount();
+                v = v.next;
+            } while (v != poly.firstVertex);
+            windows = new double[4 * count];
+            int k = 0;
+            do {
+                for (int i = 0; i < v.getWindowCount(); i++) {
+                    v.getWindow(i).getAbsoluteCoordinates(coords);
+                    System.arraycopy(coords, 0, windows, k, 4);
+                    k += 4;
+                }
+                v = v.next;
+            } while (v != poly.firstVertex);
+            square = poly.getSquare();
+            label = poly.label;
+            labelSize = poly.LABEL_THICKNESS;
+            this.labelled = labelled;
+        }
+    }
+
+    private PlanSnapshot(double translationX, double translationY, double scaleFactor,
+                         boolean showText, Room[] rooms) {
+        this.translationX = translationX;
+        this.translationY = translationY;
+        this.scaleFactor = scaleFactor;
+        this.showText = showText;
+        this.rooms = rooms;
+    }
+
+    /**
+     * Copies the rooms as they are now. Must be called on the UI thread.
+     * @param edited rooms whose labels are left out
+     * @param coords scratch array of 4 values
+     */
+    static PlanSnapshot capture(ArrayList<Polygon> rooms, ArrayList<Polygon> edited,
+                                double translationX, double translationY,
+                                double scaleFactor, boolean showText, double[] coords) {
+        Room[] copies = new Room[rooms.size()];
+        for (int i = 0; i < copies.length; i++) {
+            Polygon poly = rooms.get(i);
+            copies[i] = new Room(poly, !edited.contains(poly), coords);
+        }
+        return new PlanSnapshot(translationX, translationY, scaleFactor, showText, copies);
+    }
+}
@@ -0,0 +1,55 @@
+package com.daniils.floordesigner.view;
+
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import com.daniils.floordesigner.util.Util;
+import com.daniils.floordesigner.windows.SymbolCache;
+
+/**
+ * Everything the draw methods need besides the canvas: what is visible, how detailed
+ * it should be, and paints and scratch objects reused from frame to frame,
+ * so that drawing a frame does not allocate.
+ * Scratch objects are only valid until the next call that may use them.
+ */
+public class RenderContext {
+    public final Viewport viewport;
+    public final DetailLevel detailLevel;
+
+    // rooms, their walls and labels
+    public final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // windows and doors
+    public final Paint elementPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // LengthFrame
+    public final Paint framePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    public final Paint background = Util.getPaint(Color.WHITE);
+    public final Paint penPaint = Util.getPaint(Color.BLACK);
+    public final Paint placedShapePaint = Util.getPaint(Color.RED);
+    public final SymbolCache symbols = new SymbolCache();
+
+    public final Matrix matrix = new Matrix();
+    public final RectF rect = new RectF();
+    public final Path path = new Path();
+    public final double[] coords = new double[4];
+
+    RenderContext(Viewport viewport, DetailLevel detailLevel) {
+        this.viewport = viewport;
+        this.detailLevel = detailLevel;
+        background.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Brings the paint to the state of a fresh Util.getPaint(color).
+     */
+    public Paint reset(Paint paint, int color) {
+        paint.reset();
+        paint.setFlags(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(color);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(4);
+        return paint;
+    }
+}
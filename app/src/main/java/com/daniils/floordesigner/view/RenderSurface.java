@@ -0,0 +1,199 @@
+package com.daniils.floordesigner.view;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Typeface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.daniils.floordesigner.Polygon;
+import com.daniils.floordesigner.Vertex;
+import com.daniils.floordesigner.VertexStore;
+import com.daniils.floordesigner.util.Util;
+
+import java.util.ArrayList;
+
+/**
+ * Surface the plan is drawn onto from a dedicated thread.
+ * DrawingView publishes a PlanSnapshot here every frame and draws only the selection over it,
+ * so walls, floors, windows and room labels are drawn while the UI thread goes on
+ * with touches and collision solving. Windows are drawn as openings, the way
+ * the plan shows them at a small zoom, and walls get no measurements.
+ */
+@SuppressLint("ViewConstructor")
+public class RenderSurface extends SurfaceView implements SurfaceHolder.Callback {
+    private final Object lock = new Object();
+    // guarded by lock
+    private PlanSnapshot pending = null;
+    private PlanSnapshot shown = null;
+    private boolean redraw = false;
+    private RenderThread thread = null;
+
+    public RenderSurface(Context context) {
+        super(context);
+        getHolder().addCallback(this);
+    }
+
+    /**
+     * Hands a snapshot over to the render thread, replacing one which has not been drawn yet.
+     */
+    void publish(PlanSnapshot snapshot) {
+        synchronized (lock) {
+            pending = snapshot;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        thread = new RenderThread(holder);
+        thread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (lock) {
+            redraw = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // the surface must not be used after this returns
+        synchronized (lock) {
+            thread.running = false;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        thread = null;
+    }
+
+    private class RenderThread extends Thread {
+        private final SurfaceHolder holder;
+        // guarded by lock
+        private boolean running = true;
+        // used by this thread only
+        private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final Paint textPaint = Util.getPaint(Color.BLACK);
+        private final Path path = new Path();
+        private final ArrayList<Label> labels = new ArrayList<>();
+
+        RenderThread(SurfaceHolder holder) {
+            super("RenderSurface");
+            this.holder = holder;
+            textPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+            textPaint.setTypeface(Typeface.MONOSPACE);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                PlanSnapshot snapshot;
+                synchronized (lock) {
+                    while (running && pending == null && !redraw) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!running)
+                        return;
+                    if (pending != null) {
+                        shown = pending;
+                        pending = null;
+                    }
+                    redraw = false;
+                    snapshot = shown;
+                }
+                if (snapshot != null)
+                    drawFrame(snapshot);
+            }
+        }
+
+        private void drawFrame(PlanSnapshot snapshot) {
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null)
+                return;
+            try {
+                canvas.drawColor(Color.WHITE);
+                canvas.translate((float) snapshot.translationX, (float) snapshot.translationY);
+                canvas.scale((float) snapshot.scaleFactor, (float) snapshot.scaleFactor);
+                drawRooms(canvas, snapshot);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+
+        /**
+         * Same passes as DrawingView.drawPolygons: every wall goes under every floor.
+         */
+        private void drawRooms(Canvas canvas, PlanSnapshot snapshot) {
+            PlanSnapshot.Room[] rooms = snapshot.rooms;
+            paint.setStyle(Paint.Style.FILL);
+            paint.setColor(Polygon.wallsColor);
+            for (PlanSnapshot.Room room : rooms) {
+                outline(room.store);
+                canvas.drawPath(path, paint);
+            }
+            for (PlanSnapshot.Room room : rooms) {
+                paint.setStyle(Paint.Style.FILL);
+                paint.setColor(Polygon.fillColor);
+                floor(room.store);
+                canvas.drawPath(path, paint);
+                paint.setStyle(Paint.Style.STROKE);
+                paint.setStrokeWidth((float) Vertex.THICKNESS);
+                paint.setColor(Color.WHITE);
+                double[] w = room.windows;
+                for (int k = 0; k < w.length; k += 4)
+                    canvas.drawLine((float) w[k], (float) w[k + 1], (float) w[k + 2], (float) w[k + 3], paint);
+            }
+            if (!snapshot.showText)
+                return;
+            while (labels.size() < rooms.length)
+                labels.add(new Label(2, " ft^2"));
+            for (int i = 0; i < rooms.length; i++) {
+                PlanSnapshot.Room room = rooms[i];
+                if (!room.labelled)
+                    continue;
+                textPaint.setTextSize(room.labelSize);
+                labels.get(i).update(room.square, room.label, textPaint)
+                        .drawCentered(canvas, textPaint, room.store.centroidX(), room.store.centroidY());
+            }
+        }
+
+        // as Polygon.updatePaths
+        private void outline(VertexStore store) {
+            path.rewind();
+            path.moveTo((float) store.ax[0], (float) store.ay[0]);
+            for (int i = 0; i < store.size; i++) {
+                int j = store.next(i);
+                path.lineTo((float) store.bx[i], (float) store.by[i]);
+                path.lineTo((float) store.ax[j], (float) store.ay[j]);
+            }
+        }
+
+        private void floor(VertexStore store) {
+            path.rewind();
+            path.moveTo((float) store.x[0], (float) store.y[0]);
+            for (int i = 0; i < store.size; i++) {
+                int j = store.next(i);
+                path.lineTo((float) store.x[j], (float) store.y[j]);
+            }
+        }
+    }
+}
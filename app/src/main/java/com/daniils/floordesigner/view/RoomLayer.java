@@ -0,0 +1,183 @@
+package com.daniils.floordesigner.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+
+import com.daniils.floordesigner.Polygon;
+
+import java.util.ArrayList;
+
+/**
+ * Offscreen bitmap with the rooms which are not being edited.
+ * It is redrawn in full only when the view transform changes,
+ * so while a room is dragged the rest of the plan costs a single bitmap copy per frame,
+ * besides the floors of the rooms next to it, which DrawingView draws again over its walls.
+ * When a room joins or leaves the layer, or one of its rooms changes, only the part of the bitmap
+ * around that room is cleared and drawn again: unlike the view itself, a bitmap canvas is clipped.
+ */
+class RoomLayer {
+    private Bitmap bitmap = null;
+    private Canvas canvas = null;
+    private boolean valid = false;
+    // what the bitmap currently shows, with the bounds every room had when it was drawn
+    private final ArrayList<Polygon> drawnRooms = new ArrayList<>();
+    private double[] drawnBounds = new double[0];
+    private double translationX, translationY, scaleFactor;
+    // bounds of the rooms to draw again, in world coordinates
+    private boolean damaged = false;
+    private double damageLeft, damageTop, damageRight, damageBottom;
+    private final ArrayList<Polygon> damagedRooms = new ArrayList<>();
+
+    /**
+     * Must be called when the whole layer has to be drawn again.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Must be called when a room of the layer has changed in place, without being edited.
+     */
+    void invalidate(Polygon poly) {
+        addDamage(poly.getLeft(), poly.getTop(), poly.getRight(), poly.getBottom());
+    }
+
+    /**
+     * Draws the rooms in screen coordinates, bringing the bitmap up to date first.
+     * @return false if the layer is not available and the rooms have to be drawn directly
+     */
+    boolean draw(Canvas target, DrawingView view, ArrayList<Polygon> rooms,
+                 double translationX, double translationY, double scaleFactor) {
+        int width = view.getWidth(), height = view.getHeight();
+        if (width <= 0 || height <= 0)
+            return false;
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            if (bitmap != null)
+                bitmap.recycle();
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+            valid = false;
+        }
+        if (!valid || translationX != this.translationX
+                || translationY != this.translationY || scaleFactor != this.scaleFactor) {
+            this.translationX = translationX;
+            this.translationY = translationY;
+            this.scaleFactor = scaleFactor;
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            redraw(view, rooms);
+            remember(rooms);
+            valid = true;
+        } else {
+            findDamage(rooms);
+            if (damaged)
+                redrawDamage(view, rooms);
+        }
+        damaged = false;
+        target.drawBitmap(bitmap, 0, 0, null);
+        return true;
+    }
+
+    /**
+     * Adds the old place of every room which has left the layer or moved,
+     * and the new place of every room which has joined it or moved.
+     */
+    private void findDamage(ArrayList<Polygon> rooms) {
+        boolean same = sameRooms(rooms);
+        for (int i = 0; i < rooms.size(); i++) {
+            Polygon poly = rooms.get(i);
+            int j = same ? i : drawnRooms.indexOf(poly);
+            if (j < 0 || moved(poly, j))
+                addDamage(poly.getLeft(), poly.getTop(), poly.getRight(), poly.getBottom());
+        }
+        for (int j = 0; j < drawnRooms.size(); j++) {
+            Polygon poly = drawnRooms.get(j);
+            if ((!same && !rooms.contains(poly)) || moved(poly, j))
+                addDamage(drawnBounds[4 * j], drawnBounds[4 * j + 1], drawnBounds[4 * j + 2], drawnBounds[4 * j + 3]);
+        }
+    }
+
+    private void redrawDamage(DrawingView view, ArrayList<Polygon> rooms) {
+        // everything a room draws lies within DRAW_MARGIN of its bounds
+        double l = damageLeft - Polygon.DRAW_MARGIN, t = damageTop - Polygon.DRAW_MARGIN;
+        double r = damageRight + Polygon.DRAW_MARGIN, b = damageBottom + Polygon.DRAW_MARGIN;
+        damagedRooms.clear();
+        for (int i = 0; i < rooms.size(); i++) {
+            Polygon poly = rooms.get(i);
+            if (poly.getLeft() - Polygon.DRAW_MARGIN <= r && poly.getRight() + Polygon.DRAW_MARGIN >= l
+                    && poly.getTop() - Polygon.DRAW_MARGIN <= b && poly.getBottom() + Polygon.DRAW_MARGIN >= t)
+                damagedRooms.add(poly);
+        }
+        int count = canvas.save();
+        canvas.clipRect((float) Math.floor(l * scaleFactor + translationX), (float) Math.floor(t * scaleFactor + translationY),
+                (float) Math.ceil(r * scaleFactor + translationX), (float) Math.ceil(b * scaleFactor + translationY));
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        redraw(view, damagedRooms);
+        canvas.restoreToCount(count);
+        remember(rooms);
+    }
+
+    private void redraw(DrawingView view, ArrayList<Polygon> rooms) {
+        int count = canvas.save();
+        canvas.translate((float) translationX, (float) translationY);
+        canvas.scale((float) scaleFactor, (float) scaleFactor);
+        view.drawPolygons(canvas, rooms);
+        canvas.restoreToCount(count);
+    }
+
+    private void remember(ArrayList<Polygon> rooms) {
+        drawnRooms.clear();
+        drawnRooms.addAll(rooms);
+        if (drawnBounds.length < 4 * drawnRooms.size())
+            drawnBounds = new double[8 * drawnRooms.size()];
+        for (int j = 0; j < drawnRooms.size(); j++) {
+            Polygon poly = drawnRooms.get(j);
+            drawnBounds[4 * j] = poly.getLeft();
+            drawnBounds[4 * j + 1] = poly.getTop();
+            drawnBounds[4 * j + 2] = poly.getRight();
+            drawnBounds[4 * j + 3] = poly.getBottom();
+        }
+    }
+
+    private boolean moved(Polygon poly, int j) {
+        return poly.getLeft() != drawnBounds[4 * j] || poly.getTop() != drawnBounds[4 * j + 1]
+                || poly.getRight() != drawnBounds[4 * j + 2] || poly.getBottom() != drawnBounds[4 * j + 3];
+    }
+
+    private void addDamage(double left, double top, double right, double bottom) {
+        if (!damaged) {
+            damageLeft = left;
+            damageTop = top;
+            damageRight = right;
+            damageBottom = bottom;
+            damaged = true;
+            return;
+        }
+        damageLeft = Math.min(damageLeft, left);
+        damageTop = Math.min(damageTop, top);
+        damageRight = Math.max(damageRight, right);
+        damageBottom = Math.max(damageBottom, bottom);
+    }
+
+    // same as drawnRooms.equals(rooms), without an iterator
+    private boolean sameRooms(ArrayList<Polygon> rooms) {
+        if (rooms.size() != drawnRooms.size())
+            return false;
+        for (int i = 0; i < rooms.size(); i++) {
+            if (rooms.get(i) != drawnRooms.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    void release() {
+        if (bitmap != null)
+            bitmap.recycle();
+        bitmap = null;
+        canvas = null;
+        drawnRooms.clear();
+        valid = false;
+        damaged = false;
+    }
+}
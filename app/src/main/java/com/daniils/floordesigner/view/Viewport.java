@@ -0,0 +1,28 @@
+package com.daniils.floordesigner.view;
+
+/**
+ * Part of the plan visible on the screen, in world coordinates.
+ */
+public class Viewport {
+    private double left, top, right, bottom;
+    // nothing is culled until the view has been laid out
+    private boolean bounded = false;
+
+    void set(double translationX, double translationY, double scaleFactor, int width, int height) {
+        bounded = width > 0 && height > 0;
+        left = -translationX / scaleFactor;
+        top = -translationY / scaleFactor;
+        right = (width - translationX) / scaleFactor;
+        bottom = (height - translationY) / scaleFactor;
+    }
+
+    /**
+     * Whether the rectangle grown by margin on every side overlaps the visible area.
+     */
+    public boolean intersects(double left, double top, double right, double bottom, double margin) {
+        if (!bounded)
+            return true;
+        return left - margin <= this.right && right + margin >= this.left
+                && top - margin <= this.bottom && bottom + margin >= this.top;
+    }
+}
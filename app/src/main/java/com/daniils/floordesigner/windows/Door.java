@@ -18,6 +18,13 @@ public class Door extends Window {
         super(left, right, v);
     }
 
+    @Override
+    protected void drawOpening(Canvas c, Paint paint, float width) {
+        paint.setColor(Polygon.fillColor);
+        paint.setStrokeWidth((float)Vertex.THICKNESS);
+        c.drawLine(0, 0, width, 0, paint);
+    }
+
     @Override
     public double getWidth() {
         return 200;
@@ -28,10 +35,9 @@ public class Door extends Window {
     }
 
     @Override
-    protected void drawDetails(Canvas c, Paint paint) {
+    protected void drawDetails(Canvas c, Paint paint, float width) {
         paint.setColor(Polygon.fillColor);
         paint.setStrokeWidth((float)Vertex.THICKNESS);
-        float width = getLength();
         c.drawLine(0, 0, width, 0, paint);
 
         paint.setColor(Color.BLACK);
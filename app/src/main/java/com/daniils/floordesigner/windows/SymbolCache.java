@@ -0,0 +1,72 @@
+package com.daniils.floordesigner.windows;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.os.Build;
+import android.util.LongSparseArray;
+
+import com.daniils.floordesigner.Vertex;
+
+/**
+ * Recorded drawings of windows and doors, one per class and length.
+ * Elements of the same kind differ only in their placement on the wall,
+ * so the detailed symbol is recorded once and replayed under the element's transform.
+ */
+public class SymbolCache {
+    // symbols are recorded for lengths rounded to this step
+    private static final float LENGTH_STEP = 1;
+    private static final int MAX_SYMBOLS = 64;
+
+    private final LongSparseArray<Picture> symbols = new LongSparseArray<>();
+
+    /**
+     * Length the symbol of an element is drawn with, so that nearby lengths share it.
+     */
+    public static float quantize(float length) {
+        return Math.max(LENGTH_STEP, Math.round(length / LENGTH_STEP) * LENGTH_STEP);
+    }
+
+    /**
+     * Draws the detailed symbol of the window with its left end at the origin and the wall along the x axis.
+     * @param length quantized length of the window
+     * @param paint freshly reset paint, used to record the symbol or to draw it directly
+     */
+    void draw(Canvas c, Window window, float length, Paint paint) {
+        // hardware canvases before Marshmallow replay pictures in software
+        if (c.isHardwareAccelerated() && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            window.drawDetails(c, paint, length);
+            return;
+        }
+        long key = ((long) window.getClassId() << 32) | (long) (length / LENGTH_STEP);
+        Picture picture = symbols.get(key);
+        float padding = getPadding(length);
+        if (picture == null) {
+            if (symbols.size() >= MAX_SYMBOLS)
+                symbols.clear();
+            picture = record(window, length, padding, paint);
+            symbols.put(key, picture);
+        }
+        c.translate(-padding, -padding);
+        c.drawPicture(picture);
+        c.translate(padding, padding);
+    }
+
+    // a door leaf sweeps up to its length away from the wall
+    private static float getPadding(float length) {
+        return length + (float) Vertex.THICKNESS;
+    }
+
+    private static Picture record(Window window, float length, float padding, Paint paint) {
+        Picture picture = new Picture();
+        Canvas canvas = picture.beginRecording((int) Math.ceil(length + 2 * padding), (int) Math.ceil(2 * padding));
+        canvas.translate(padding, padding);
+        window.drawDetails(canvas, paint, length);
+        picture.endRecording();
+        return picture;
+    }
+
+    public void clear() {
+        symbols.clear();
+    }
+}
@@ -2,14 +2,16 @@ package com.daniils.floordesigner.windows;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 
 import com.daniils.floordesigner.Point;
 import com.daniils.floordesigner.Selectable;
 import com.daniils.floordesigner.Vertex;
+import com.daniils.floordesigner.util.Geometry;
 import com.daniils.floordesigner.util.Maths;
-import com.daniils.floordesigner.util.Util;
 import com.daniils.floordesigner.view.DrawingView;
+import com.daniils.floordesigner.view.RenderContext;
 
 
 public class Window extends Selectable implements Comparable<Window> {
@@ -17,13 +19,19 @@ public class Window extends Selectable implements Comparable<Window> {
     public double left, right;
     public int selectedBorder = 0;
     private double originalScale;
+    private final double[] rel = new double[2];
+    // transform from the symbol's own coordinates to the plan, rebuilt after the wall or the window changes
+    private final Matrix placement = new Matrix();
+    private boolean placementValid = false;
+    private float placementLength;
 
     public Window(Point p, Vertex v) {
         this.v = v;
         originalScale = v.polygon.getScale();
-        Point mid = Maths.projectTo(p, v.p, v.next.p);
-        double dist = Maths.dist(mid, v.p);
-        double len = Maths.dist(v.p, v.next.p);
+        Point a = v.getPoint(), b = v.next.getPoint();
+        Point mid = Maths.projectTo(p, a, b);
+        double dist = Maths.dist(mid, a);
+        double len = Maths.dist(a, b);
         left = (dist - getWidth() / 2) / len;
         right = (dist + getWidth() / 2) / len;
     }
@@ -35,22 +43,50 @@ public class Window extends Selectable implements Comparable<Window> {
         this.right = right;
     }
 
-    public void draw(Canvas c) {
+    public void draw(Canvas c, RenderContext rc) {
+        updatePlacement(rc.coords);
         c.save();
-        Point[] ps = getAbsoluteCoordinates();
-        c.translate((float)ps[0].x, (float)ps[0].y);
-        double theta = Maths.theta(v.p, v.next.p);
-        c.rotate((float)(theta * 180 / Math.PI));
-        Paint paint = Util.getPaint(Color.BLUE);
-        c.scale((float)(v.polygon.getScale() / originalScale), (float)(v.polygon.getScale() / originalScale));
-        drawDetails(c, paint);
+        c.concat(placement);
+        Paint paint = rc.reset(rc.elementPaint, Color.BLUE);
+        if (rc.detailLevel.showElementDetails(placementLength))
+            rc.symbols.draw(c, this, SymbolCache.quantize(placementLength), paint);
+        else
+            drawOpening(c, paint, placementLength);
         c.restore();
     }
 
-    protected void drawDetails(Canvas c, Paint paint) {
+    /**
+     * Must be called after the wall of the window has been moved or the polygon rescaled.
+     */
+    public void invalidatePlacement() {
+        placementValid = false;
+    }
+
+    private void updatePlacement(double[] coords) {
+        if (placementValid)
+            return;
+        getAbsoluteCoordinates(coords);
+        double theta = Math.atan2(v.next.getY() - v.getY(), v.next.getX() - v.getX());
+        float scale = (float)(v.polygon.getScale() / originalScale);
+        placement.setScale(scale, scale);
+        placement.postRotate((float)(theta * 180 / Math.PI));
+        placement.postTranslate((float)coords[0], (float)coords[1]);
+        placementLength = getLength();
+        placementValid = true;
+    }
+
+    /**
+     * Simplified look for small zoom: just the gap in the wall.
+     */
+    protected void drawOpening(Canvas c, Paint paint, float width) {
+        paint.setColor(Color.WHITE);
+        paint.setStrokeWidth((float)Vertex.THICKNESS);
+        c.drawLine(0, 0, width, 0, paint);
+    }
+
+    protected void drawDetails(Canvas c, Paint paint, float width) {
         paint.setColor(Color.WHITE);
         paint.setStrokeWidth((float)Vertex.THICKNESS);
-        float width = getLength();
         c.drawLine(0, 0, width, 0, paint);
         paint.setColor(Color.BLACK);
         paint.setStrokeWidth(1);
@@ -87,19 +123,21 @@ public class Window extends Selectable implements Comparable<Window> {
         super.processMovement(point);
         if (selectedBorder == 0)
             return true;
-        double len = Maths.dist(v.p, v.next.p);
-        Point rel = Maths.getRelativeCoords(v.p, v.next.p, point).scale(1 / len);
+        double len = Geometry.dist(v.getX(), v.getY(), v.next.getX(), v.next.getY());
+        Geometry.relativeCoords(v.getX(), v.getY(), v.next.getX(), v.next.getY(), point.x, point.y, rel);
+        double relX = rel[0] / len;
         Window right  = v.windows.higher(this);
         Window left = v.windows.lower(this);
 
         double l = (left == null ? 0 : left.right);
         double r = (right == null ? 1 : right.left);
         if (selectedBorder == -1) {
-            this.left = Maths.clamp(rel.x, l, this.right - 30 / len);
+            this.left = Maths.clamp(relX, l, this.right - 30 / len);
         }
         if (selectedBorder == 1) {
-            this.right = Maths.clamp(rel.x, this.left + 30 / len, r);
+            this.right = Maths.clamp(relX, this.left + 30 / len, r);
         }
+        invalidatePlacement();
         return true;
     }
 
@@ -134,22 +172,29 @@ public class Window extends Selectable implements Comparable<Window> {
     public float getLength() {
         if (v == null)
             return 0;
-        Point vec = v.next.p.sub(v.p);
-        double len = vec.length();
+        double len = Geometry.dist(v.getX(), v.getY(), v.next.getX(), v.next.getY());
         return (float)(Math.abs(right - left) * len);
     }
 
     public Point[] getAbsoluteCoordinates() {
         if (v == null)
             return null;
-        Point vec = v.next.p.sub(v.p);
-        double len = vec.length();
-        Point a = v.p.add(vec.scale(left));
-        Point b = v.p.add(vec.scale(right));
-
-        double y = v.p.x - v.next.p.x ;
-        double x =  v.next.p.y - v.p.y;
-        Point offset = new Point(x, y).scale(0.5 * Vertex.THICKNESS / len);
-        return new Point[] { a.add(offset), b.add(offset) };
+        double[] coords = new double[4];
+        getAbsoluteCoordinates(coords);
+        return new Point[] { new Point(coords[0], coords[1]), new Point(coords[2], coords[3]) };
+    }
+
+    /**
+     * Writes both ends of the window, x and y of the left one followed by the right one, into out.
+     */
+    public void getAbsoluteCoordinates(double[] out) {
+        double px = v.getX(), py = v.getY();
+        double vx = v.next.getX() - px, vy = v.next.getY() - py;
+        double k = 0.5 * Vertex.THICKNESS / Math.sqrt(vx * vx + vy * vy);
+        double ox = vy * k, oy = -vx * k;
+        out[0] = px + vx * left + ox;
+        out[1] = py + vy * left + oy;
+        out[2] = px + vx * right + ox;
+        out[3] = py + vy * right + oy;
     }
 }
@@ -0,0 +1,151 @@
+package com.daniils.floordesigner;
+
+import com.daniils.floordesigner.util.Geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the outline kept up to date by OutlineEngine against one computed from scratch.
+ */
+public class OutlineEngineTest {
+    private static final int SIZE = 10;
+    private static final int STEPS = 5000;
+
+    @Test
+    public void outline_isThicknessAwayFromWalls() {
+        VertexStore store = regularPolygon(SIZE, 500);
+        OutlineEngine engine = new OutlineEngine(store, new RoomMetrics(store));
+        engine.update();
+        for (int i = 0; i < SIZE; i++) {
+            int prev = i == 0 ? SIZE - 1 : i - 1, next = store.next(i);
+            assertEquals(store.ax[i], store.bx[i], 1e-9);
+            assertEquals(store.ay[i], store.by[i], 1e-9);
+            assertEquals(Vertex.THICKNESS, Geometry.distToLine(store.x[prev], store.y[prev],
+                    store.x[i], store.y[i], store.ax[i], store.ay[i]), 1e-9);
+            assertEquals(Vertex.THICKNESS, Geometry.distToLine(store.x[i], store.y[i],
+                    store.x[next], store.y[next], store.bx[i], store.by[i]), 1e-9);
+        }
+    }
+
+    @Test
+    public void updates_matchRecalculation() {
+        Random random = new Random(11);
+        VertexStore store = regularPolygon(SIZE, 500);
+        OutlineEngine engine = new OutlineEngine(store, new RoomMetrics(store));
+        engine.update();
+        for (int step = 0; step < STEPS; step++) {
+            if (random.nextInt(10) == 0) {
+                double alpha = random.nextDouble() * 2 * Math.PI;
+                store.rotate(store.centroidX(), store.centroidY(), alpha);
+                engine.rotate(alpha);
+            } else {
+                // small moves keep the polygon simple, sharp corners are cut off
+                int i = random.nextInt(SIZE);
+                store.x[i] += random.nextDouble() * 40 - 20;
+                store.y[i] += random.nextDouble() * 40 - 20;
+                engine.vertexMoved(i);
+            }
+            engine.update();
+            if (step % 50 == 0)
+                assertMatches(store);
+        }
+        assertMatches(store);
+    }
+
+    @Test
+    public void outline_matchesTrigReference() {
+        // a sharp spike at (0, 0) and a flat corner at (500, 300)
+        double[] xs = { 0, 500, 500, 250 }, ys = { 0, 60, 300, 300 };
+        for (int flip = 0; flip < 2; flip++) {
+            // both orientations, so that the spike is cut from outside and from inside
+            VertexStore store = new VertexStore(xs.length);
+            for (int i = 0; i < xs.length; i++) {
+                int k = flip == 0 ? i : xs.length - 1 - i;
+                store.x[i] = xs[k];
+                store.y[i] = ys[k];
+            }
+            new OutlineEngine(store, new RoomMetrics(store)).update();
+            int cut = 0;
+            double[] expected = new double[4];
+            for (int i = 0; i < store.size; i++) {
+                referenceOutline(store, i, expected);
+                assertEquals(expected[0], store.ax[i], 1e-9);
+                assertEquals(expected[1], store.ay[i], 1e-9);
+                assertEquals(expected[2], store.bx[i], 1e-9);
+                assertEquals(expected[3], store.by[i], 1e-9);
+                if (expected[0] != expected[2] || expected[1] != expected[3])
+                    cut++;
+            }
+            assertTrue(cut > 0);
+        }
+    }
+
+    private static VertexStore regularPolygon(int size, double radius) {
+        VertexStore store = new VertexStore(size);
+        for (int i = 0; i < size; i++) {
+            double angle = 2 * Math.PI * i / size;
+            store.x[i] = radius * Math.cos(angle);
+            store.y[i] = radius * Math.sin(angle);
+        }
+        return store;
+    }
+
+    private static void assertMatches(VertexStore store) {
+        VertexStore expected = new VertexStore(store.size);
+        System.arraycopy(store.x, 0, expected.x, 0, store.size);
+        System.arraycopy(store.y, 0, expected.y, 0, store.size);
+        new OutlineEngine(expected, new RoomMetrics(expected)).update();
+        for (int i = 0; i < store.size; i++) {
+            assertEquals(expected.ax[i], store.ax[i], 1e-6);
+            assertEquals(expected.ay[i], store.ay[i], 1e-6);
+            assertEquals(expected.bx[i], store.bx[i], 1e-6);
+            assertEquals(expected.by[i], store.by[i], 1e-6);
+        }
+    }
+
+    /**
+     * Outline points of vertex i the way Vertex computed them with atan2, cos and sin
+     * before OutlineEngine, written into out as ax, ay, bx, by.
+     */
+    private static void referenceOutline(VertexStore store, int i, double[] out) {
+        int prev = i == 0 ? store.size - 1 : i - 1, next = store.next(i);
+        double[] bis = referenceBisector(store, i);
+        double[] prevBis = referenceBisector(store, prev), nextBis = referenceBisector(store, next);
+        double length = Math.hypot(bis[0], bis[1]);
+        double ox = store.x[i] - bis[0], oy = store.y[i] - bis[1];
+        if (length <= 2 * Vertex.THICKNESS) {
+            out[0] = out[2] = ox;
+            out[1] = out[3] = oy;
+            return;
+        }
+        // the corner is cut across the bisector, 2 * THICKNESS away from the vertex
+        double k = 2 * Vertex.THICKNESS / length;
+        double cx = store.x[i] - bis[0] * k, cy = store.y[i] - bis[1] * k;
+        project(cx, cy, store.x[prev] - prevBis[0], store.y[prev] - prevBis[1], ox, oy, out, 0);
+        project(cx, cy, ox, oy, store.x[next] - nextBis[0], store.y[next] - nextBis[1], out, 2);
+    }
+
+    private static double[] referenceBisector(VertexStore store, int i) {
+        int prev = i == 0 ? store.size - 1 : i - 1, next = store.next(i);
+        double theta1 = Math.atan2(store.y[i] - store.y[prev], store.x[i] - store.x[prev]);
+        double theta2 = Math.atan2(store.y[next] - store.y[i], store.x[next] - store.x[i]);
+        double angle = (Math.PI * 3 - (theta2 - theta1)) % (Math.PI * 2);
+        double outer = Math.PI * 2 - angle;
+        double length = Vertex.THICKNESS / Math.cos(outer / 2 - Math.PI / 2);
+        double theta = theta2 + angle / 2;
+        return new double[] { Math.cos(theta) * length, Math.sin(theta) * length };
+    }
+
+    // projection of (px, py) onto the line through A and B, written into out at offset
+    private static void project(double px, double py, double ax, double ay, double bx, double by,
+                                double[] out, int offset) {
+        double ex = bx - ax, ey = by - ay;
+        double t = ((px - ax) * ex + (py - ay) * ey) / (ex * ex + ey * ey);
+        out[offset] = ax + ex * t;
+        out[offset + 1] = ay + ey * t;
+    }
+}
@@ -0,0 +1,66 @@
+package com.daniils.floordesigner;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the incrementally updated metrics agree with a full recalculation.
+ */
+public class RoomMetricsTest {
+    private static final int SIZE = 12;
+    private static final int STEPS = 20000;
+
+    @Test
+    public void updates_matchRecalculation() {
+        Random random = new Random(7);
+        VertexStore store = new VertexStore(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            double angle = 2 * Math.PI * i / SIZE;
+            store.x[i] = 500 * Math.cos(angle);
+            store.y[i] = 500 * Math.sin(angle);
+            setOutline(store, i, random);
+        }
+        RoomMetrics metrics = new RoomMetrics(store);
+        for (int step = 0; step < STEPS; step++) {
+            int i = random.nextInt(SIZE);
+            switch (random.nextInt(3)) {
+                case 0:
+                    store.x[i] += random.nextDouble() * 200 - 100;
+                    store.y[i] += random.nextDouble() * 200 - 100;
+                    metrics.vertexMoved(i);
+                    break;
+                case 1:
+                    setOutline(store, i, random);
+                    metrics.outlineMoved(i);
+                    break;
+                default:
+                    double dx = random.nextDouble() * 2000 - 1000, dy = random.nextDouble() * 2000 - 1000;
+                    store.translate(dx, dy);
+                    metrics.translate(dx, dy);
+            }
+            if (step % 100 == 0)
+                assertMatches(store, metrics);
+        }
+        assertMatches(store, metrics);
+    }
+
+    private static void setOutline(VertexStore store, int i, Random random) {
+        store.ax[i] = store.x[i] + random.nextDouble() * 60 - 30;
+        store.ay[i] = store.y[i] + random.nextDouble() * 60 - 30;
+        store.bx[i] = store.x[i] + random.nextDouble() * 60 - 30;
+        store.by[i] = store.y[i] + random.nextDouble() * 60 - 30;
+    }
+
+    private static void assertMatches(VertexStore store, RoomMetrics metrics) {
+        RoomMetrics expected = new RoomMetrics(store);
+        assertEquals(expected.getArea(), metrics.getArea(), 1e-6 * Math.abs(expected.getArea()));
+        assertEquals(expected.getPerimeter(), metrics.getPerimeter(), 1e-9 * expected.getPerimeter());
+        assertEquals(expected.getLeft(), metrics.getLeft(), 0);
+        assertEquals(expected.getTop(), metrics.getTop(), 0);
+        assertEquals(expected.getRight(), metrics.getRight(), 0);
+        assertEquals(expected.getBottom(), metrics.getBottom(), 0);
+    }
+}
@@ -0,0 +1,121 @@
+package com.daniils.floordesigner.util;
+
+import com.daniils.floordesigner.Point;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the per-call cost of Geometry with the Maths functions it replaces.
+ * Timing depends on the machine, so it is not part of the regular test run; remove @Ignore to run it.
+ */
+@Ignore("timing comparison, run by hand")
+public class GeometryBenchmarkTest {
+    private static final int N = 1 << 12;
+    private static final int ROUNDS = 200;
+    private static final int PASSES = 5;
+
+    private final double[] xs = new double[N * 4];
+    private final double[] ys = new double[N * 4];
+
+    public GeometryBenchmarkTest() {
+        Random random = new Random(42);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = random.nextDouble() * 2000 - 1000;
+            ys[i] = random.nextDouble() * 2000 - 1000;
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        // best time of every loop over several passes, the first ones are slowed down by the JIT
+        long[] best = new long[6];
+        Arrays.fill(best, Long.MAX_VALUE);
+        double sink = 0;
+        for (int pass = 0; pass < PASSES; pass++)
+            sink += measure(best);
+        assertFalse(Double.isNaN(sink));
+        report("relative coords", best[0], best[1]);
+        report("distance to line", best[2], best[3]);
+        report("segment intersection", best[4], best[5]);
+    }
+
+    private double measure(long[] best) {
+        final Point[] points = new Point[xs.length];
+        for (int i = 0; i < xs.length; i++)
+            points[i] = new Point(xs[i], ys[i]);
+        final double[] out = new double[2];
+
+        long t0 = System.nanoTime();
+        double sink = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < N; i++) {
+                Point rel = Maths.getRelativeCoords(points[i * 4], points[i * 4 + 1], points[i * 4 + 2]);
+                sink += rel.x;
+            }
+        }
+        long t1 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < N; i++) {
+                int j = i * 4;
+                Geometry.relativeCoords(xs[j], ys[j], xs[j + 1], ys[j + 1], xs[j + 2], ys[j + 2], out);
+                sink += out[0];
+            }
+        }
+        long t2 = System.nanoTime();
+        best[0] = Math.min(best[0], t1 - t0);
+        best[1] = Math.min(best[1], t2 - t1);
+
+        t0 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < N; i++) {
+                sink += Maths.dist(points[i * 4], points[i * 4 + 1], points[i * 4 + 2]);
+            }
+        }
+        t1 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < N; i++) {
+                int j = i * 4;
+                sink += Geometry.distToLine(xs[j], ys[j], xs[j + 1], ys[j + 1], xs[j + 2], ys[j + 2]);
+            }
+        }
+        t2 = System.nanoTime();
+        best[2] = Math.min(best[2], t1 - t0);
+        best[3] = Math.min(best[3], t2 - t1);
+
+        t0 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < N; i++) {
+                Point p = Maths.intersection(points[i * 4], points[i * 4 + 1], points[i * 4 + 2], points[i * 4 + 3], false);
+                if (p != null)
+                    sink += p.x;
+            }
+        }
+        t1 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < N; i++) {
+                int j = i * 4;
+                if (Geometry.intersection(xs[j], ys[j], xs[j + 1], ys[j + 1],
+                        xs[j + 2], ys[j + 2], xs[j + 3], ys[j + 3], false, out))
+                    sink += out[0];
+            }
+        }
+        t2 = System.nanoTime();
+        best[4] = Math.min(best[4], t1 - t0);
+        best[5] = Math.min(best[5], t2 - t1);
+        return sink;
+    }
+
+    private static void report(String name, long mathsNanos, long geometryNanos) {
+        double calls = (double)N * ROUNDS;
+        String message = String.format("%s: Maths %.1f ns/call, Geometry %.1f ns/call",
+                name, mathsNanos / calls, geometryNanos / calls);
+        // the JIT often removes the allocations of Maths as well, so only a clear slowdown fails
+        assertTrue(message, geometryNanos < 1.5 * mathsNanos);
+    }
+}
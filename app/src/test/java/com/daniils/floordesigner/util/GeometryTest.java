@@ -0,0 +1,142 @@
+package com.daniils.floordesigner.util;
+
+import com.daniils.floordesigner.Point;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks Geometry functions, against Maths where it has a counterpart.
+ */
+public class GeometryTest {
+    private static final int N = 1 << 12;
+
+    private final double[] xs = new double[N * 4];
+    private final double[] ys = new double[N * 4];
+
+    public GeometryTest() {
+        Random random = new Random(42);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = random.nextDouble() * 2000 - 1000;
+            ys[i] = random.nextDouble() * 2000 - 1000;
+        }
+    }
+
+    @Test
+    public void relativeCoords_matchesMaths() {
+        double[] out = new double[2];
+        for (int i = 0; i < N; i++) {
+            Point a = point(i, 0), b = point(i, 1), c = point(i, 2);
+            Point rel = Maths.getRelativeCoords(a, b, c);
+            Geometry.relativeCoords(a.x, a.y, b.x, b.y, c.x, c.y, out);
+            // Maths truncates to integers and loses the sign of y
+            assertEquals(rel.x, out[0], 2);
+            assertEquals(rel.y, Math.abs(out[1]), 2);
+        }
+    }
+
+    @Test
+    public void distToLine_matchesMaths() {
+        for (int i = 0; i < N; i++) {
+            Point a = point(i, 0), b = point(i, 1), c = point(i, 2);
+            double expected = Maths.dist(a, b, c);
+            if (Double.isNaN(expected))
+                continue; // Heron's formula breaks down on almost degenerate triangles
+            assertEquals(expected, Geometry.distToLine(a.x, a.y, b.x, b.y, c.x, c.y), 1e-6 * Maths.dist(a, b));
+        }
+    }
+
+    @Test
+    public void intersection_matchesMaths() {
+        double[] out = new double[2];
+        for (int i = 0; i < N; i++) {
+            Point a = point(i, 0), b = point(i, 1), c = point(i, 2), d = point(i, 3);
+            Point expected = Maths.intersection(a, b, c, d, false);
+            boolean found = Geometry.intersection(a.x, a.y, b.x, b.y, c.x, c.y, d.x, d.y, false, out);
+            assertEquals(expected != null, found);
+            if (found) {
+                assertEquals(expected.x, out[0], 1e-6);
+                assertEquals(expected.y, out[1], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void segmentDist_handComputedCases() {
+        // crossing, and touching with an end
+        assertEquals(0, Geometry.segmentDist(0, 0, 10, 10, 0, 10, 10, 0), 0);
+        assertEquals(0, Geometry.segmentDist(0, 0, 10, 0, 5, 0, 5, 7), 0);
+        // parallel and overlapping, one above the other
+        assertEquals(3, Geometry.segmentDist(0, 0, 10, 0, 4, 3, 20, 3), 1e-12);
+        // on the same line, overlapping and apart
+        assertEquals(0, Geometry.segmentDist(0, 0, 10, 0, 5, 0, 15, 0), 1e-12);
+        assertEquals(4, Geometry.segmentDist(0, 0, 10, 0, 14, 0, 20, 0), 1e-12);
+        // an end of CD against the inside of AB
+        assertEquals(2, Geometry.segmentDist(0, 0, 10, 0, 6, 2, 6, 9), 1e-12);
+        // closest at two ends: (10, 0) and (13, 4)
+        assertEquals(5, Geometry.segmentDist(0, 0, 10, 0, 13, 4, 20, 9), 1e-12);
+    }
+
+    @Test
+    public void segmentDist_matchesSampledDistance() {
+        final int samples = 200;
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            // short segments close to each other, so that many of them cross or nearly touch
+            double[] p = new double[8];
+            for (int k = 0; k < 8; k++)
+                p[k] = random.nextDouble() * 100;
+            double expected = Double.MAX_VALUE;
+            for (int s = 0; s <= samples; s++) {
+                double t = (double)s / samples;
+                double x1 = p[0] + (p[2] - p[0]) * t, y1 = p[1] + (p[3] - p[1]) * t;
+                for (int r = 0; r <= samples; r++) {
+                    double u = (double)r / samples;
+                    double x2 = p[4] + (p[6] - p[4]) * u, y2 = p[5] + (p[7] - p[5]) * u;
+                    expected = Math.min(expected, Math.hypot(x2 - x1, y2 - y1));
+                }
+            }
+            double dist = Geometry.segmentDist(p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7]);
+            // the closest samples lie at most half a sample step away from the closest points
+            double step = (Math.hypot(p[2] - p[0], p[3] - p[1]) + Math.hypot(p[6] - p[4], p[7] - p[5])) / samples;
+            assertTrue(dist <= expected + 1e-9);
+            assertEquals(expected, dist, step / 2 + 1e-9);
+        }
+    }
+
+    @Test
+    public void distToRay_matchesSegmentOrApex() {
+        for (int i = 0; i < N; i++) {
+            int j = i * 4;
+            double ax = xs[j], ay = ys[j], bx = xs[j + 1], by = ys[j + 1], cx = xs[j + 2], cy = ys[j + 2];
+            double t = Geometry.projectionParam(ax, ay, bx, by, cx, cy);
+            double expected = t < 0 ? Geometry.dist(ax, ay, cx, cy)
+                    : Geometry.distToLine(ax, ay, bx, by, cx, cy);
+            assertEquals(expected, Geometry.distToRay(ax, ay, bx, by, cx, cy), 1e-6);
+        }
+    }
+
+    @Test
+    public void segmentSeparation_isNegativeOnlyForCrossings() {
+        double[] out = new double[2];
+        for (int i = 0; i < N; i++) {
+            int j = i * 4;
+            double ax = xs[j], ay = ys[j], bx = xs[j + 1], by = ys[j + 1];
+            double cx = xs[j + 2], cy = ys[j + 2], dx = xs[j + 3], dy = ys[j + 3];
+            double sep = Geometry.segmentSeparation(ax, ay, bx, by, cx, cy, dx, dy);
+            if (Geometry.intersection(ax, ay, bx, by, cx, cy, dx, dy, false, out))
+                assertTrue(sep <= 0);
+            else
+                assertEquals(Geometry.segmentDist(ax, ay, bx, by, cx, cy, dx, dy), sep, 0);
+        }
+        // every end of this cross is 10 away from the other segment's line
+        assertEquals(-10, Geometry.segmentSeparation(-10, 0, 10, 0, 0, -10, 0, 10), 1e-12);
+    }
+
+    private Point point(int i, int k) {
+        return new Point(xs[i * 4 + k], ys[i * 4 + k]);
+    }
+}
@@ -0,0 +1,36 @@
+package com.daniils.floordesigner.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RootFinderTest {
+
+    @Test
+    public void lastTrue_findsBorder() {
+        double x = RootFinder.lastTrue(0, 50, 0.1, RootFinder.DEFAULT_BUDGET, v -> v < 17.3);
+        assertTrue(x < 17.3);
+        assertEquals(17.3, x, 0.1);
+    }
+
+    @Test
+    public void lastTrue_respectsBudget() {
+        final int[] probes = { 0 };
+        RootFinder.lastTrue(0, 50, 1e-9, 5, v -> {
+            probes[0]++;
+            return v < 17.3;
+        });
+        assertEquals(5, probes[0]);
+    }
+
+    @Test
+    public void illinois_convergesFasterThanBisection() {
+        final int[] probes = { 0 };
+        double x = RootFinder.illinois(0, 50, 1e-6, 100, v -> {
+            probes[0]++;
+            return v * v - 300;
+        });
+        assertEquals(Math.sqrt(300), x, 1e-6);
+        assertTrue(probes[0] < 26); // bisection needs 26 probes for this precision
+    }
+}
@@ -0,0 +1,40 @@
+package com.daniils.floordesigner.view;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that every zoom tier of DetailLevel can be reached within the zoom limits of DrawingView.
+ */
+public class DetailLevelTest {
+
+    @Test
+    public void everyTier_isReachable() {
+        DetailLevel level = new DetailLevel();
+        assertTrue(DrawingView.MIN_SCALE < level.minTextScale);
+        assertTrue(level.minTextScale < level.minAngleScale);
+        assertTrue(level.minAngleScale <= DrawingView.MAX_SCALE);
+
+        level.update(DrawingView.MIN_SCALE);
+        assertFalse(level.showText());
+        assertFalse(level.showAngles());
+
+        level.update((level.minTextScale + level.minAngleScale) / 2);
+        assertTrue(level.showText());
+        assertFalse(level.showAngles());
+
+        level.update(DrawingView.MAX_SCALE);
+        assertTrue(level.showText());
+        assertTrue(level.showAngles());
+    }
+
+    @Test
+    public void wallMeasurement_dependsOnScreenLength() {
+        DetailLevel level = new DetailLevel();
+        level.update(DrawingView.MAX_SCALE);
+        double shortest = level.minMeasuredWallPixels / DrawingView.MAX_SCALE;
+        assertTrue(level.showMeasurement(shortest));
+        assertFalse(level.showMeasurement(shortest * 0.99));
+    }
+}